@@ -1,6 +1,8 @@
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import pingpong.PingPongLoadGenerator;
 import pingpong.PingPongProtocol;
+import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
 import pt.unl.fct.di.novasys.babel.core.Babel;
 
 import java.net.Inet4Address;
@@ -22,8 +24,12 @@ public class Main {
         //Reads arguments from the command line and loads them into a Properties object
         Properties props = Babel.loadConfig(args, null);
 
-        //Creates a new instance of the pingpong.PingPongProtocol
-        PingPongProtocol pingPong = new PingPongProtocol();
+        //Creates a new instance of the pingpong.PingPongProtocol, or of the load generator if load_connections is defined
+        GenericProtocol pingPong;
+        if (props.containsKey("load_connections"))
+            pingPong = new PingPongLoadGenerator();
+        else
+            pingPong = new PingPongProtocol();
 
         //Registers the protocol in babel
         babel.registerProtocol(pingPong);
@@ -0,0 +1,132 @@
+package pingpong;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear latency histogram, in the style of HdrHistogram.
+ * Values are split into power of two ranges, and each range is split into the same number of linear sub-buckets, so
+ * every recorded value is kept with a bounded relative error (1/64 with the default precision) in constant memory.
+ * Recording a value is a couple of bit operations and an array increment, and never allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int DEFAULT_PRECISION_BITS = 7;
+
+    private final int subBucketBits; // each power of two range is split into 2^(subBucketBits-1) sub-buckets
+    private final int subBucketHalfCount;
+    private final long[] counts;
+
+    private long totalCount;
+    private long minValue;
+    private long maxValue;
+    private long sum;
+
+    public LatencyHistogram() {
+        this(DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * @param subBucketBits number of bits of precision kept for each value (the relative error is 2^-(subBucketBits-1))
+     */
+    public LatencyHistogram(int subBucketBits) {
+        if (subBucketBits < 2 || subBucketBits > 16)
+            throw new IllegalArgumentException("Invalid histogram precision: " + subBucketBits);
+        this.subBucketBits = subBucketBits;
+        this.subBucketHalfCount = 1 << (subBucketBits - 1);
+        // one linear range for values below 2^subBucketBits, plus one half range for every possible shift
+        this.counts = new long[(64 - subBucketBits + 2) * subBucketHalfCount];
+        reset();
+    }
+
+    /**
+     * Records a value (e.g., a latency in nanoseconds). Negative values are recorded as 0.
+     * @param value the value to record
+     */
+    public void recordValue(long value) {
+        if (value < 0)
+            value = 0;
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < minValue)
+            minValue = value;
+        if (value > maxValue)
+            maxValue = value;
+    }
+
+    /**
+     * Adds all the values recorded in another histogram with the same precision to this one
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        if (other.subBucketBits != subBucketBits)
+            throw new IllegalArgumentException("Cannot add histograms with different precisions");
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+        sum += other.sum;
+        minValue = Math.min(minValue, other.minValue);
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values fall
+     * @param percentile the percentile (between 0 and 100)
+     * @return the highest value equivalent (within the histogram precision) to the value at the given percentile,
+     * or 0 if no values were recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0)
+            return 0;
+        long target = (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount);
+        if (target < 1)
+            target = 1;
+        long accumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            accumulated += counts[i];
+            if (accumulated >= target)
+                return Math.min(highestEquivalentValue(i), maxValue);
+        }
+        return maxValue;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMinValue() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    public long getMaxValue() {
+        return totalCount == 0 ? 0 : maxValue;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    private int indexOf(long value) {
+        // values below 2^subBucketBits are stored exactly, larger values keep only their subBucketBits highest bits
+        int shift = 64 - Long.numberOfLeadingZeros(value) - subBucketBits;
+        if (shift <= 0)
+            return (int) value;
+        return shift * subBucketHalfCount + (int) (value >>> shift);
+    }
+
+    private long highestEquivalentValue(int index) {
+        int shift = index / subBucketHalfCount - 1;
+        if (shift <= 0)
+            return index;
+        long subBucket = index - (long) shift * subBucketHalfCount;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
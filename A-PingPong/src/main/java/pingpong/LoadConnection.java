@@ -0,0 +1,65 @@
+package pingpong;
+
+/**
+ * State of one connection of the load generator
+ * Pongs come back in the same order as the pings on a TCP connection, so the send times of the outstanding pings are
+ * kept in a FIFO ring buffer with room for the whole window
+ */
+public class LoadConnection {
+
+    private final int channelId;
+    private final long[] sendTimes; // send times (System.nanoTime) of the outstanding pings, oldest first
+    private int head;
+    private int outstanding;
+    private boolean up;
+
+    public LoadConnection(int channelId, int window) {
+        this.channelId = channelId;
+        this.sendTimes = new long[window];
+        this.head = 0;
+        this.outstanding = 0;
+        this.up = false;
+    }
+
+    public int getChannelId() {
+        return channelId;
+    }
+
+    public boolean isUp() {
+        return up;
+    }
+
+    public void markUp() {
+        up = true;
+    }
+
+    public boolean isWindowFull() {
+        return outstanding == sendTimes.length;
+    }
+
+    public int getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * Records the send time of a new ping. Must only be called when the window is not full
+     * @param sendTimeNanos the send time of the ping
+     */
+    public void pingSent(long sendTimeNanos) {
+        sendTimes[(head + outstanding) % sendTimes.length] = sendTimeNanos;
+        outstanding++;
+    }
+
+    /**
+     * Removes the oldest outstanding ping, which is the one answered by the pong just received
+     * @return the send time of that ping, or -1 if there were no outstanding pings
+     */
+    public long pongReceived() {
+        if (outstanding == 0)
+            return -1;
+        long sendTime = sendTimes[head];
+        head = (head + 1) % sendTimes.length;
+        outstanding--;
+        return sendTime;
+    }
+}
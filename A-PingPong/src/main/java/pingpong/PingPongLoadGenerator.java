@@ -0,0 +1,230 @@
+package pingpong;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pingpong.messages.PingMessage;
+import pingpong.messages.PongMessage;
+import pingpong.timers.LoadEndTimer;
+import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
+import pt.unl.fct.di.novasys.babel.exceptions.HandlerRegistrationException;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.channel.tcp.TCPChannel;
+import pt.unl.fct.di.novasys.channel.tcp.events.*;
+import pt.unl.fct.di.novasys.network.ISerializer;
+import pt.unl.fct.di.novasys.network.data.Host;
+import utils.NetworkingUtilities;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Closed-loop load generator for the PingPongProtocol
+ * Opens load_connections TCP connections to the target (one TCPChannel each, so that each one is a different socket)
+ * and keeps load_window pings outstanding on each of them: every pong immediately releases the next ping on the same
+ * connection. After load_duration seconds it reports the message rate, the byte rate and the latency distribution.
+ */
+public class PingPongLoadGenerator extends GenericProtocol {
+
+    private static final Logger logger = LogManager.getLogger(PingPongLoadGenerator.class); // logger for the protocol
+
+    private final Map<Integer, LoadConnection> connections = new HashMap<>(); // channel id -> connection
+    private final LatencyHistogram rttHistogram = new LatencyHistogram(); // RTTs of the pongs (in nanoseconds)
+
+    private Host pingTarget; // target to send pings to
+    private String message; // message to send in the pings
+    private int nConnections; // number of connections to open to the target
+    private int window; // number of outstanding pings per connection
+    private int durationSeconds; // duration of the load test
+
+    private int nextPingId = 0; // id of the next ping message to send
+    private int connectionsUp = 0;
+    private boolean running = false;
+    private long startNanos;
+    private long receivedPongs = 0;
+    private int pingSize; // serialized size of a ping (in bytes)
+    private int pongSize; // serialized size of a pong (in bytes)
+
+    public PingPongLoadGenerator() {
+        // The load generator replaces the pingpong.PingPongProtocol on the client, so it uses the same protocol ID
+        super("PingPongLoadGenerator", PingPongProtocol.PROTO_ID);
+    }
+
+    @Override
+    public void init(Properties props) throws IOException, HandlerRegistrationException {
+        nConnections = Integer.parseInt(props.getProperty("load_connections"));
+        window = Integer.parseInt(props.getProperty("load_window", "1"));
+        durationSeconds = Integer.parseInt(props.getProperty("load_duration", "10"));
+        message = props.getProperty("message", "");
+
+        InetAddress pingTargetAddr = Inet4Address.getByName(props.getProperty("target_address"));
+        int pingTargetPort = Integer.parseInt(props.getProperty("target_port", PingPongProtocol.DEFAULT_PORT + ""));
+        pingTarget = new Host(pingTargetAddr, pingTargetPort);
+
+        computeMessageSizes();
+
+        String address;
+        if (props.containsKey("interface"))
+            address = NetworkingUtilities.getAddress(props.getProperty("interface"));
+        else if (props.containsKey("address"))
+            address = props.getProperty("address");
+        else
+            address = NetworkingUtilities.getAddress("eth0");
+        int basePort = Integer.parseInt(props.getProperty("port", PingPongProtocol.DEFAULT_PORT + ""));
+
+        registerTimerHandler(LoadEndTimer.TIMER_ID, this::uponLoadEnd);
+
+        // TCPChannel keeps a single connection per destination, so each connection to the target needs its own channel
+        for (int i = 0; i < nConnections; i++) {
+            Properties channelProps = new Properties();
+            channelProps.setProperty(TCPChannel.ADDRESS_KEY, address);
+            channelProps.setProperty(TCPChannel.PORT_KEY, String.valueOf(basePort + i));
+            int channelId = createChannel(TCPChannel.NAME, channelProps);
+
+            registerChannelEventHandler(channelId, OutConnectionUp.EVENT_ID, this::uponOutConnectionUp);
+            registerChannelEventHandler(channelId, OutConnectionDown.EVENT_ID, this::uponOutConnectionDown);
+            registerChannelEventHandler(channelId, OutConnectionFailed.EVENT_ID, this::uponOutConnectionFailed);
+
+            registerMessageSerializer(channelId, PingMessage.MSG_ID, PingMessage.serializer);
+            registerMessageSerializer(channelId, PongMessage.MSG_ID, PongMessage.serializer);
+            registerMessageHandler(channelId, PongMessage.MSG_ID, this::uponReceivePongMessage, this::uponMessageFailed);
+
+            connections.put(channelId, new LoadConnection(channelId, window));
+        }
+
+        logger.info("Load generator initialized, opening {} connections to {} with a window of {} for {}s",
+                nConnections, pingTarget, window, durationSeconds);
+        for (LoadConnection connection : connections.values())
+            openConnection(pingTarget, connection.getChannelId());
+    }
+
+    /**
+     * Handle when a connection to the target is up
+     * Once all connections are up, start the load test
+     * @param event OutConnectionUp event
+     * @param channel Channel ID
+     */
+    private void uponOutConnectionUp(OutConnectionUp event, int channel) {
+        LoadConnection connection = connections.get(channel);
+        if (connection.isUp())
+            return;
+        connection.markUp();
+        connectionsUp++;
+        logger.debug("Connection {} of {} to {} is now up", connectionsUp, nConnections, event.getNode());
+        if (connectionsUp == nConnections) {
+            logger.info("All connections are up, starting load test");
+            running = true;
+            startNanos = System.nanoTime();
+            setupTimer(new LoadEndTimer(), durationSeconds * 1000L);
+            for (LoadConnection c : connections.values())
+                fillWindow(c);
+        }
+    }
+
+    /**
+     * Handle a newly received Pong Message
+     * Record the RTT and release the next ping on the same connection
+     * @param msg PongMessage
+     * @param from Source Host
+     * @param sourceProto Source protocol ID
+     * @param channelId Source channel ID (identifies the connection the pong arrived on)
+     */
+    private void uponReceivePongMessage(PongMessage msg, Host from, short sourceProto, int channelId) {
+        long now = System.nanoTime();
+        LoadConnection connection = connections.get(channelId);
+        long sendTime = connection.pongReceived();
+        if (!running || sendTime < 0)
+            return;
+        rttHistogram.recordValue(now - sendTime);
+        receivedPongs++;
+        fillWindow(connection);
+    }
+
+    /**
+     * Handle the end of the load test
+     * Print the report and exit
+     * @param timer LoadEndTimer
+     * @param timerId Timer ID
+     */
+    private void uponLoadEnd(LoadEndTimer timer, long timerId) {
+        running = false;
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        double messagesPerSecond = receivedPongs / seconds;
+        logger.info("Load test against {} finished: {} connections, window of {}, {} pongs in {} s",
+                pingTarget, nConnections, window, receivedPongs, String.format("%.2f", seconds));
+        logger.info("Throughput: {} msgs/s ({} round trips/s), {} bytes/s (serialized pings + pongs of {} + {} bytes)",
+                String.format("%.1f", messagesPerSecond * 2), String.format("%.1f", messagesPerSecond),
+                String.format("%.1f", messagesPerSecond * (pingSize + pongSize)), pingSize, pongSize);
+        logger.info("Latency: {}", String.format("p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus mean=%.1fus",
+                rttHistogram.getValueAtPercentile(50) / 1000.0, rttHistogram.getValueAtPercentile(90) / 1000.0,
+                rttHistogram.getValueAtPercentile(99) / 1000.0, rttHistogram.getValueAtPercentile(99.9) / 1000.0,
+                rttHistogram.getMaxValue() / 1000.0, rttHistogram.getMean() / 1000.0));
+        for (LoadConnection connection : connections.values())
+            closeConnection(pingTarget, connection.getChannelId());
+        System.exit(0);
+    }
+
+    /**
+     * Send pings on a connection until its window of outstanding pings is full
+     * @param connection the connection
+     */
+    private void fillWindow(LoadConnection connection) {
+        while (running && !connection.isWindowFull()) {
+            connection.pingSent(System.nanoTime());
+            sendMessage(connection.getChannelId(), new PingMessage(++nextPingId, message), pingTarget);
+        }
+    }
+
+    /**
+     * Compute the serialized size of the ping and pong messages sent during the test, to report the byte rate
+     */
+    @SuppressWarnings("unchecked")
+    private void computeMessageSizes() throws IOException {
+        ByteBuf buf = Unpooled.buffer();
+        ((ISerializer<PingMessage>) PingMessage.serializer).serialize(new PingMessage(0, message), buf);
+        pingSize = buf.readableBytes();
+        buf.clear();
+        ((ISerializer<PongMessage>) PongMessage.serializer).serialize(new PongMessage(0, message), buf);
+        pongSize = buf.readableBytes();
+        buf.release();
+    }
+
+    /**
+     * Handle when a connection to the target has failed
+     * Print error message and exit
+     * @param event OutConnectionFailed event
+     * @param channel Channel ID
+     */
+    private void uponOutConnectionFailed(OutConnectionFailed<ProtoMessage> event, int channel) {
+        logger.error(event);
+        System.exit(1);
+    }
+
+    /**
+     * Handle when a connection to the target went down
+     * Print the event, the load test continues on the remaining connections
+     * @param event OutConnectionDown event
+     * @param channel Channel ID
+     */
+    private void uponOutConnectionDown(OutConnectionDown event, int channel) {
+        logger.warn(event);
+    }
+
+    /**
+     * Handle the case when a message fails to be (confirmed to be) delivered to the destination
+     * Print the error
+     * @param msg the message that failed delivery
+     * @param host the destination host
+     * @param destProto the destination protocol ID
+     * @param error the error that caused the failure
+     * @param channelId the channel ID (from which channel was the message was sent)
+     */
+    private void uponMessageFailed(ProtoMessage msg, Host host, short destProto, Throwable error, int channelId) {
+        logger.warn("Failed message: {} to host: {} with error: {}", msg, host, error.getMessage());
+    }
+}
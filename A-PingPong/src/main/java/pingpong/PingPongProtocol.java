@@ -179,9 +179,10 @@ public class PingPongProtocol extends GenericProtocol {
      * @param channelId Source channel ID (from which channel was the message was received)
      */
     public void uponReceivePingMessage(PingMessage msg, Host from, short sourceProto, int channelId) {
-        logger.info("Received PingMessage with id: {} and message: {}", msg.getPingId(), msg.getMessage());
+        logger.debug("Received PingMessage with id: {}", msg.getPingId());
         // use connection created by client (TCPChannel.CONNECTION_IN) to reply with pong message
-        sendMessage(channelId, new PongMessage(msg.getPingId(), msg.getMessage()), from, TCPChannel.CONNECTION_IN);
+        // the pong echoes the payload of the ping as is, the server never decodes it
+        sendMessage(channelId, PongMessage.echo(msg), from, TCPChannel.CONNECTION_IN);
     }
 
     /**
@@ -9,11 +9,21 @@ public class PingMessage extends ProtoMessage {
     public static final short MSG_ID = 101;
 
     private final int pingId;
-    private final String message;
+    private String message; // decoded lazily from the payload, for messages received from the network
+    private final ByteBuf payload; // UTF-8 bytes of the message, for messages received from the network
+
     public PingMessage(int pingId, String message) {
         super(MSG_ID);
         this.pingId = pingId;
         this.message = message;
+        this.payload = null;
+    }
+
+    public PingMessage(int pingId, ByteBuf payload) {
+        super(MSG_ID);
+        this.pingId = pingId;
+        this.message = null;
+        this.payload = payload;
     }
 
     public int getPingId() {
@@ -21,19 +31,31 @@ public class PingMessage extends ProtoMessage {
     }
 
     public String getMessage() {
+        if (message == null)
+            message = Utils.toUTF8String(payload);
         return message;
     }
 
+    /**
+     * @return the UTF-8 bytes of the message if it was received from the network (null otherwise)
+     */
+    public ByteBuf getPayload() {
+        return payload;
+    }
+
     public static ISerializer<? extends ProtoMessage> serializer = new ISerializer<PingMessage>() {
         public void serialize(PingMessage msg, ByteBuf out) {
             out.writeInt(msg.pingId);
-            Utils.encodeUTF8(msg.message, out);
+            if (msg.payload != null)
+                Utils.writeUTF8Bytes(msg.payload, out);
+            else
+                Utils.encodeUTF8(msg.message, out);
         }
 
         public PingMessage deserialize(ByteBuf in) {
             int pingId = in.readInt();
-            String message = Utils.decodeUTF8(in);
-            return new PingMessage(pingId, message);
+            ByteBuf payload = Utils.readUTF8Bytes(in);
+            return new PingMessage(pingId, payload);
         }
     };
 
@@ -9,32 +9,65 @@ public class PongMessage extends ProtoMessage {
     public static final short MSG_ID = 102;
 
     private final int pingId;
-    private final String message;
+    private String message; // decoded lazily from the payload, for messages received from the network
+    private final ByteBuf payload; // UTF-8 bytes of the message, for messages received from the network
+
     public PongMessage(int pingId, String message) {
         super(MSG_ID);
         this.pingId = pingId;
         this.message = message;
+        this.payload = null;
+    }
+
+    public PongMessage(int pingId, ByteBuf payload) {
+        super(MSG_ID);
+        this.pingId = pingId;
+        this.message = null;
+        this.payload = payload;
     }
 
+    /**
+     * Creates the pong that answers a ping, carrying the same message
+     * A ping received from the network is echoed with its raw payload bytes, without decoding and encoding them again
+     * @param ping the ping to answer
+     * @return the pong
+     */
+    public static PongMessage echo(PingMessage ping) {
+        if (ping.getPayload() != null)
+            return new PongMessage(ping.getPingId(), ping.getPayload());
+        return new PongMessage(ping.getPingId(), ping.getMessage());
+    }
 
     public int getPingId() {
         return pingId;
     }
 
     public String getMessage() {
+        if (message == null)
+            message = Utils.toUTF8String(payload);
         return message;
     }
 
+    /**
+     * @return the UTF-8 bytes of the message if it was received from the network (null otherwise)
+     */
+    public ByteBuf getPayload() {
+        return payload;
+    }
+
     public static ISerializer<? extends ProtoMessage> serializer = new ISerializer<PongMessage>() {
         public void serialize(PongMessage msg, ByteBuf out) {
             out.writeInt(msg.pingId);
-            Utils.encodeUTF8(msg.message, out);
+            if (msg.payload != null)
+                Utils.writeUTF8Bytes(msg.payload, out);
+            else
+                Utils.encodeUTF8(msg.message, out);
         }
 
         public PongMessage deserialize(ByteBuf in) {
             int pingId = in.readInt();
-            String message = Utils.decodeUTF8(in);
-            return new PongMessage(pingId, message);
+            ByteBuf payload = Utils.readUTF8Bytes(in);
+            return new PongMessage(pingId, payload);
         }
     };
 
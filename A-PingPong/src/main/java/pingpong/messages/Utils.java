@@ -1,21 +1,70 @@
 package pingpong.messages;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 
 import java.nio.charset.StandardCharsets;
 
 
 public class Utils {
+    /**
+     * Writes a string as its UTF-8 length followed by its UTF-8 bytes
+     * The string is encoded straight into the buffer, without an intermediate byte[]
+     * @param message the string to write
+     * @param out the buffer to write to
+     */
     public static void encodeUTF8(String message, ByteBuf out) {
-        byte[] stringBytes = message.getBytes(StandardCharsets.UTF_8);
-        out.writeInt(stringBytes.length);
-        out.writeBytes(stringBytes);
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0); // the length is only known after encoding
+        int length = ByteBufUtil.writeUtf8(out, message);
+        out.setInt(lengthIndex, length);
     }
 
+    /**
+     * Reads a string written by encodeUTF8
+     * The string is decoded straight from the buffer, without an intermediate byte[]
+     * @param buff the buffer to read from
+     * @return the string
+     */
     public static String decodeUTF8(ByteBuf buff) {
-        byte[] stringBytes = new byte[buff.readInt()];
-        buff.readBytes(stringBytes);
-        return new String(stringBytes, StandardCharsets.UTF_8);
+        int length = buff.readInt();
+        String message = buff.toString(buff.readerIndex(), length, StandardCharsets.UTF_8);
+        buff.skipBytes(length);
+        return message;
+    }
+
+    /**
+     * Reads a string written by encodeUTF8 without decoding it, so that it can be decoded only if needed (see
+     * toUTF8String) or written again as is (see writeUTF8Bytes)
+     * The bytes are copied to an unpooled heap buffer: the network buffer is released by the channel once the message
+     * is deserialized, and the message may outlive it
+     * @param buff the buffer to read from
+     * @return a buffer with the UTF-8 bytes of the string
+     */
+    public static ByteBuf readUTF8Bytes(ByteBuf buff) {
+        int length = buff.readInt();
+        return Unpooled.copiedBuffer(buff.readSlice(length));
+    }
+
+    /**
+     * Writes the UTF-8 bytes read by readUTF8Bytes, in the same format as encodeUTF8
+     * The indexes of the given bytes are not modified, so the same bytes can be written concurrently to many buffers
+     * @param utf8Bytes the UTF-8 bytes of the string
+     * @param out the buffer to write to
+     */
+    public static void writeUTF8Bytes(ByteBuf utf8Bytes, ByteBuf out) {
+        out.writeInt(utf8Bytes.readableBytes());
+        out.writeBytes(utf8Bytes, utf8Bytes.readerIndex(), utf8Bytes.readableBytes());
+    }
+
+    /**
+     * Decodes the UTF-8 bytes read by readUTF8Bytes, without modifying their indexes
+     * @param utf8Bytes the UTF-8 bytes of the string
+     * @return the string
+     */
+    public static String toUTF8String(ByteBuf utf8Bytes) {
+        return utf8Bytes.toString(StandardCharsets.UTF_8);
     }
 
 
@@ -0,0 +1,17 @@
+package pingpong.timers;
+
+import pt.unl.fct.di.novasys.babel.generic.ProtoTimer;
+
+public class LoadEndTimer extends ProtoTimer {
+
+    public static final short TIMER_ID = 102;
+
+    public LoadEndTimer() {
+        super(TIMER_ID);
+    }
+
+    @Override
+    public ProtoTimer clone() {
+        return this;
+    }
+}
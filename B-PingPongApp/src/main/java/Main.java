@@ -4,6 +4,8 @@ import org.apache.logging.log4j.Logger;
 import pingpong.PingPongProtocol;
 import pt.unl.fct.di.novasys.babel.core.Babel;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class Main {
@@ -18,21 +20,26 @@ public class Main {
         //Reads arguments from the command line and loads them into a Properties object
         Properties props = Babel.loadConfig(args, null);
 
-        //Creates a new instance of the pingpong.PingPongProtocol
-        PingPongProtocol pingPong = new PingPongProtocol();
+        //Creates the instances (shards) of the pingpong.PingPongProtocol, each one runs on its own thread and port
+        int nShards = Integer.parseInt(props.getProperty("shards", "1"));
+        List<PingPongProtocol> shards = new ArrayList<>();
+        for (int i = 0; i < nShards; i++)
+            shards.add(new PingPongProtocol(i));
 
         //Create a new instance of App
-        App app = new App("App", (short) 0); //this ID needs to be different from the one in pingpong.PingPongProtocol
+        App app = new App("App", (short) 0); //this ID needs to be different from the ones of the pingpong.PingPongProtocol
 
         //Registers the protocol in babel
-        babel.registerProtocol(pingPong);
+        for (PingPongProtocol pingPong : shards)
+            babel.registerProtocol(pingPong);
         babel.registerProtocol(app);
 
         //Starts babel
         babel.start();
 
         //Initializes the protocol
-        pingPong.init(props);
+        for (PingPongProtocol pingPong : shards)
+            pingPong.init(props);
         app.init(props);
     }
 
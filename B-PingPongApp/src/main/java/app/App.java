@@ -1,6 +1,7 @@
 package app;
 
-import pingpong.PingPongProtocol;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import pingpong.requests.PingRequest;
 import pingpong.requests.PongReply;
 import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
@@ -10,13 +11,26 @@ import utils.NetworkingUtilities;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 public class App extends GenericProtocol {
-    private PingRequest pingRequest = null;
-    private int received = 0;
+    private static final Logger logger = LogManager.getLogger(App.class);
+
+    // commands waiting for replies, by request (written by the input thread, read by the Babel thread)
+    private final Map<PingRequest, Command> pendingRequests = new ConcurrentHashMap<>();
+    private final Semaphore finishedCommands = new Semaphore(0); // released once per finished command
+    private ShardSelector shardSelector; // selects the local PingPongProtocol instance handling each destination
 
     public App(String protoName, short protoId) {
         super(protoName, protoId);
@@ -27,9 +41,18 @@ public class App extends GenericProtocol {
 
         // register protocol handlers
         // register reply handler
+        // a single handler receives the replies of every local shard
         registerReplyHandler(PongReply.REPLY_ID, this::onPongReply);
 
-        readSystemIn();
+        shardSelector = new ShardSelector(Integer.parseInt(properties.getProperty("shards", "1")));
+
+        // commands are read in their own thread, so that the App's Babel thread is free to handle replies
+        if (properties.containsKey("script")) {
+            List<String> script = Files.readAllLines(Paths.get(properties.getProperty("script")), StandardCharsets.UTF_8);
+            new Thread(() -> runScript(script)).start();
+        } else {
+            new Thread(this::readSystemIn).start();
+        }
     }
 
     /**
@@ -39,55 +62,175 @@ public class App extends GenericProtocol {
      * @param sourceProto source protocol
      */
     private void onPongReply(PongReply pongReply, short sourceProto) {
-        System.out.println("Received reply from " + pongReply.getDestination() + " in " + pongReply.getRTT() + "ms");
-        received++;
-        if (received == pingRequest.getNPings()) {
-            readSystemIn();
+        System.out.println("Received replies from " + pongReply.getDestination() + ": " + pongReply.getRTT()
+                + " lost=" + pongReply.getLost() + String.format(" (%.2f%%)", pongReply.getLossRate() * 100)
+                + String.format(" throughput=%.1f pings/s", pongReply.getThroughput()));
+        if (pongReply.getBreakdown() != null)
+            System.out.println(pongReply.getBreakdown());
+        Command command = pendingRequests.get(pongReply.getRequest());
+        if (command == null) {
+            logger.warn("Received reply of an unknown request: {}", pongReply.getRequest());
+            return;
+        }
+        MultiStepRun steps = command.getSteps();
+        if (steps != null)
+            steps.record(pongReply);
+        if (!command.replyReceived())
+            return;
+
+        // last reply of the current step of the command
+        pendingRequests.values().removeIf(c -> c == command);
+        if (steps != null) {
+            if (steps.nextStep()) {
+                sendPingRequests(command, steps.getDestinations(), steps::createRequest);
+                return;
+            }
+            steps.printSummary();
         }
+        finishedCommands.release();
     }
 
     /**
-     * Reads commands from stdin
+     * Reads commands from stdin, without waiting for them to finish
+     * At the end of the input (e.g., of a piped file), the process exits once all the commands have finished
      */
     private void readSystemIn() {
-        Scanner in = new Scanner(System.in);
-        try {
-            String line = in.nextLine();
-            if (line == null) {
-                System.exit(0);
-            }
+        Scanner scanner = new Scanner(System.in);
+        int startedCommands = 0;
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine();
             if (line.equals("quit")) {
                 System.exit(0);
             }
-            readCommand(line);
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (line.trim().isEmpty())
+                continue;
+            try {
+                if (readCommand(line))
+                    startedCommands++;
+            } catch (Exception e) {
+                System.out.println("Invalid command: " + line + " (" + e + ")");
+            }
         }
+        try {
+            finishedCommands.acquire(startedCommands);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.exit(0);
     }
 
     /**
-     * Reads a command from stdin and executes it
+     * Runs the commands of a script, one at a time: each command starts after all the replies of the previous one
+     * Empty lines and lines starting with # are ignored. The process exits at the end of the script
+     *
+     * @param script lines of the script
+     */
+    private void runScript(List<String> script) {
+        for (String line : script) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            if (line.equals("quit"))
+                break;
+            System.out.println("> " + line);
+            try {
+                if (readCommand(line))
+                    finishedCommands.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                System.out.println("Invalid command: " + line + " (" + e + ")");
+                System.exit(-1);
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Reads a command and executes it
      *
      * @param line command to execute
+     * @return true if the command was started and will finish once all its replies are received
      */
-    private void readCommand(String line) throws UnknownHostException, InterruptedException {
+    private boolean readCommand(String line) throws UnknownHostException {
         StringTokenizer tokenizer = new StringTokenizer(line);
         String cmd = tokenizer.nextToken();
         switch (cmd) {
             case "ping":
-                Host destination = NetworkingUtilities.parseHost(tokenizer.nextToken());
+            case "ping-udp":
+                PingRequest.Transport transport = cmd.equals("ping") ? PingRequest.Transport.TCP :
+                        PingRequest.Transport.UDP;
+                List<Host> destinations = NetworkingUtilities.parseHosts(tokenizer.nextToken());
                 String message = tokenizer.nextToken();
-                received = 0;
-                int nPings = 1;
+                int nPings = tokenizer.hasMoreTokens() ? Integer.parseInt(tokenizer.nextToken()) : 1;
+                int window = tokenizer.hasMoreTokens() ? Integer.parseInt(tokenizer.nextToken()) : 0;
+                sendPingRequests(new Command(line, null), destinations,
+                        shardDestinations -> new PingRequest(message, shardDestinations, nPings, window, transport));
+                return true;
+            case "scale":
+                Host base = NetworkingUtilities.parseHost(tokenizer.nextToken());
+                int maxShards = Integer.parseInt(tokenizer.nextToken());
+                int scaleNPings = Integer.parseInt(tokenizer.nextToken());
+                int scaleWindow = Integer.parseInt(tokenizer.nextToken());
+                String scaleMessage = tokenizer.hasMoreTokens() ? tokenizer.nextToken() : "ping";
+                return startSteps(line, new ScalingRun(base, maxShards, scaleNPings, scaleWindow, scaleMessage));
+            case "sweep":
+                Host sweepDestination = NetworkingUtilities.parseHost(tokenizer.nextToken());
+                int sweepNPings = Integer.parseInt(tokenizer.nextToken());
+                int sweepWindow = Integer.parseInt(tokenizer.nextToken());
+                int minSize = PayloadSweep.DEFAULT_MIN_SIZE;
                 if (tokenizer.hasMoreTokens()) {
-                    nPings = Integer.parseInt(tokenizer.nextToken());
+                    minSize = Integer.parseInt(tokenizer.nextToken());
                 }
-                pingRequest = new PingRequest(message, destination, nPings);
-                sendRequest(pingRequest, PingPongProtocol.PROTO_ID);
-                break;
+                int maxSize = PayloadSweep.DEFAULT_MAX_SIZE;
+                if (tokenizer.hasMoreTokens()) {
+                    maxSize = Integer.parseInt(tokenizer.nextToken());
+                }
+                return startSteps(line, new PayloadSweep(sweepDestination, sweepNPings, sweepWindow, minSize, maxSize));
             default:
                 System.out.println("Unknown command: " + cmd);
-                break;
+                return false;
+        }
+    }
+
+    /**
+     * Starts the first step of a command with several steps
+     *
+     * @param line the command
+     * @param steps the steps of the command
+     * @return true, the command finishes after its last step
+     */
+    private boolean startSteps(String line, MultiStepRun steps) {
+        sendPingRequests(new Command(line, steps), steps.getDestinations(), steps::createRequest);
+        return true;
+    }
+
+    /**
+     * Spreads the destinations over the local shards, one PingRequest per shard
+     *
+     * @param command the command the requests belong to
+     * @param destinations hosts to ping
+     * @param requestFactory creates the request for the destinations handled by one shard
+     */
+    private void sendPingRequests(Command command, List<Host> destinations,
+                                  Function<List<Host>, PingRequest> requestFactory) {
+        int nShards = Math.min(shardSelector.getLocalShards(), destinations.size());
+        List<List<Host>> perShard = new ArrayList<>(nShards);
+        for (int i = 0; i < nShards; i++)
+            perShard.add(new ArrayList<>());
+        for (int i = 0; i < destinations.size(); i++)
+            perShard.get(i % nShards).add(destinations.get(i));
+
+        // account for all the replies before sending, the first one may arrive before the last request is sent
+        command.addPendingReplies(destinations.size());
+        List<PingRequest> requests = new ArrayList<>(nShards);
+        for (List<Host> shardDestinations : perShard) {
+            PingRequest request = requestFactory.apply(shardDestinations);
+            pendingRequests.put(request, command);
+            requests.add(request);
         }
+        for (PingRequest request : requests)
+            sendRequest(request, shardSelector.nextLocalShard());
     }
 }
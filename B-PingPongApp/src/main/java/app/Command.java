@@ -0,0 +1,35 @@
+package app;
+
+/**
+ * A command read by the App (from stdin or from a script) that is waiting for its PongReplies
+ * The replies of a command are handled in the App's Babel thread, so its state does not need to be synchronized
+ */
+public class Command {
+    private final String line; // the command as it was read
+    private final MultiStepRun steps; // state of a command with several steps, null for single step commands
+    private int pendingReplies; // replies still expected for the current step of the command (one per destination)
+
+    public Command(String line, MultiStepRun steps) {
+        this.line = line;
+        this.steps = steps;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public MultiStepRun getSteps() {
+        return steps;
+    }
+
+    public void addPendingReplies(int replies) {
+        pendingReplies += replies;
+    }
+
+    /**
+     * @return true if this was the last reply expected for the current step of the command
+     */
+    public boolean replyReceived() {
+        return --pendingReplies == 0;
+    }
+}
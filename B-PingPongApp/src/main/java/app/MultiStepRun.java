@@ -0,0 +1,35 @@
+package app;
+
+import pingpong.requests.PingRequest;
+import pingpong.requests.PongReply;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.List;
+
+/**
+ * A command that runs several steps of ping sessions, one after the other, and prints a summary at the end
+ * Each step starts once all the replies of the previous step are received
+ */
+public interface MultiStepRun {
+
+    /**
+     * @return the hosts to ping in the current step
+     */
+    List<Host> getDestinations();
+
+    /**
+     * @param destinations the destinations of the current step handled by one local shard
+     * @return the request for those destinations
+     */
+    PingRequest createRequest(List<Host> destinations);
+
+    void record(PongReply reply);
+
+    /**
+     * Finishes the current step and prepares the next one
+     * @return true if there is another step to run
+     */
+    boolean nextStep();
+
+    void printSummary();
+}
@@ -0,0 +1,98 @@
+package app;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import pingpong.LatencySummary;
+import pingpong.requests.PingRequest;
+import pingpong.requests.PongReply;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * State of a "sweep" command: pings a destination with binary payloads of increasing size (doubling from minSize to
+ * maxSize) and records the RTT percentiles and the goodput of each size, to find where the channel and the
+ * serializers stop scaling with the size of the messages
+ * The payloads are generated once, before the first step, so that their generation is not measured
+ */
+public class PayloadSweep implements MultiStepRun {
+    public static final int DEFAULT_MIN_SIZE = 16;
+    public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+    private final Host destination;
+    private final int nPings; // pings per size
+    private final int window;
+    private final List<ByteBuf> payloads; // one random payload per size, in increasing order of size
+
+    private int step; // index of the payload of the current step
+    private final List<LatencySummary> rtts; // RTTs of each finished step
+    private final List<Integer> lost; // lost pings of each finished step
+    private final List<Double> goodputs; // payload bytes echoed per second of each finished step
+    private PongReply stepReply; // reply of the current step
+
+    public PayloadSweep(Host destination, int nPings, int window, int minSize, int maxSize) {
+        if (minSize <= 0 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid payload sizes: " + minSize + " to " + maxSize);
+        this.destination = destination;
+        this.nPings = nPings;
+        this.window = window;
+        this.payloads = new ArrayList<>();
+        Random random = new Random(42);
+        for (long size = minSize; size <= maxSize; size *= 2) {
+            byte[] bytes = new byte[(int) size];
+            random.nextBytes(bytes);
+            payloads.add(Unpooled.wrappedBuffer(bytes));
+        }
+        this.step = 0;
+        this.rtts = new ArrayList<>();
+        this.lost = new ArrayList<>();
+        this.goodputs = new ArrayList<>();
+    }
+
+    @Override
+    public List<Host> getDestinations() {
+        return Collections.singletonList(destination);
+    }
+
+    @Override
+    public PingRequest createRequest(List<Host> destinations) {
+        return new PingRequest(payloads.get(step), destinations, nPings, window);
+    }
+
+    @Override
+    public void record(PongReply reply) {
+        stepReply = reply;
+    }
+
+    @Override
+    public boolean nextStep() {
+        int size = payloads.get(step).readableBytes();
+        double goodput = stepReply.getDurationNanos() == 0 ? 0 :
+                stepReply.getRTT().getCount() * size * 1e9 / stepReply.getDurationNanos();
+        rtts.add(stepReply.getRTT());
+        lost.add(stepReply.getLost());
+        goodputs.add(goodput);
+        System.out.println(String.format("%d bytes: %s lost=%d goodput=%.2f MB/s", size, stepReply.getRTT(),
+                stepReply.getLost(), goodput / 1e6));
+        stepReply = null;
+        step++;
+        return step < payloads.size();
+    }
+
+    @Override
+    public void printSummary() {
+        System.out.println("Payload sweep of " + destination + " (" + nPings + " pings per size, RTTs in us):");
+        System.out.println(String.format("  %9s %10s %10s %10s %10s %10s %8s %12s",
+                "size", "p50", "p90", "p99", "p99.9", "max", "lost", "goodput"));
+        for (int i = 0; i < rtts.size(); i++) {
+            LatencySummary rtt = rtts.get(i);
+            System.out.println(String.format("  %9d %10.1f %10.1f %10.1f %10.1f %10.1f %8d %7.2f MB/s",
+                    payloads.get(i).readableBytes(), rtt.getP50() / 1000.0, rtt.getP90() / 1000.0,
+                    rtt.getP99() / 1000.0, rtt.getP999() / 1000.0, rtt.getMax() / 1000.0, lost.get(i),
+                    goodputs.get(i) / 1e6));
+        }
+    }
+}
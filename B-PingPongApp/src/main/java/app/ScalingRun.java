@@ -0,0 +1,83 @@
+package app;
+
+import pingpong.requests.PingRequest;
+import pingpong.requests.PongReply;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of a "scale" command: runs the same load against 1, 2, ..., maxShards shards of a remote process
+ * and records the aggregate throughput of each step, to obtain the scaling curve of the server
+ */
+public class ScalingRun implements MultiStepRun {
+    private final Host base; // address of shard 0 of the remote process
+    private final int maxShards;
+    private final int nPings; // pings per session (one session per remote shard)
+    private final int window;
+    private final String message;
+
+    private int shards; // number of remote shards used in the current step
+    private long stepPongs; // pongs received in the current step
+    private long stepDurationNanos; // duration of the slowest session of the current step
+    private final List<Double> throughputs; // aggregate throughput of each finished step
+
+    public ScalingRun(Host base, int maxShards, int nPings, int window, String message) {
+        this.base = base;
+        this.maxShards = maxShards;
+        this.nPings = nPings;
+        this.window = window;
+        this.message = message;
+        this.shards = 1;
+        this.throughputs = new ArrayList<>();
+    }
+
+    /**
+     * @return the remote shards to ping in the current step
+     */
+    @Override
+    public List<Host> getDestinations() {
+        List<Host> destinations = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++)
+            destinations.add(ShardSelector.remoteShard(base, i));
+        return destinations;
+    }
+
+    @Override
+    public PingRequest createRequest(List<Host> destinations) {
+        return new PingRequest(message, destinations, nPings, window);
+    }
+
+    @Override
+    public void record(PongReply reply) {
+        stepPongs += reply.getRTT().getCount();
+        stepDurationNanos = Math.max(stepDurationNanos, reply.getDurationNanos());
+    }
+
+    @Override
+    public boolean nextStep() {
+        double throughput = stepDurationNanos == 0 ? 0 : stepPongs * 1e9 / stepDurationNanos;
+        throughputs.add(throughput);
+        System.out.println(String.format("%d shard(s): %d pongs in %.1f ms, %.1f pings/s",
+                shards, stepPongs, stepDurationNanos / 1e6, throughput));
+        stepPongs = 0;
+        stepDurationNanos = 0;
+        shards++;
+        return shards <= maxShards;
+    }
+
+    /**
+     * Prints the throughput of each step, relative to the throughput with a single shard
+     */
+    @Override
+    public void printSummary() {
+        System.out.println("Scaling curve of " + base + ":");
+        double single = throughputs.get(0);
+        for (int i = 0; i < throughputs.size(); i++) {
+            double throughput = throughputs.get(i);
+            System.out.println(String.format("  %2d shard(s): %12.1f pings/s  speedup=%.2f",
+                    i + 1, throughput, single == 0 ? 0 : throughput / single));
+        }
+    }
+}
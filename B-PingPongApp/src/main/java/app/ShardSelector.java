@@ -0,0 +1,41 @@
+package app;
+
+import pingpong.PingPongProtocol;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+/**
+ * Maps work to the shards (instances) of the PingPongProtocol
+ * Local shards are selected by protocol ID, remote shards by port (shard i of a process listens on its base port + i)
+ */
+public class ShardSelector {
+    private final int localShards; // number of PingPongProtocol instances running in this process
+    private int next; // next local shard to use
+
+    public ShardSelector(int localShards) {
+        this.localShards = Math.max(1, localShards);
+        this.next = 0;
+    }
+
+    /**
+     * Called both by the input thread and by the Babel thread of the App
+     * @return the protocol ID of the next local shard, in round-robin order
+     */
+    public synchronized short nextLocalShard() {
+        short protoId = PingPongProtocol.shardProtoId(next);
+        next = (next + 1) % localShards;
+        return protoId;
+    }
+
+    public int getLocalShards() {
+        return localShards;
+    }
+
+    /**
+     * @param base address of shard 0 of a remote process
+     * @param shard index of the remote shard
+     * @return the address of the remote shard
+     */
+    public static Host remoteShard(Host base, int shard) {
+        return new Host(base.getAddress(), base.getPort() + shard);
+    }
+}
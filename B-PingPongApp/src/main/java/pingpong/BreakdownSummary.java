@@ -0,0 +1,44 @@
+package pingpong;
+
+/**
+ * Immutable summary of a LatencyBreakdown, with all values in nanoseconds
+ */
+public class BreakdownSummary {
+
+    private final LatencySummary client;
+    private final LatencySummary network;
+    private final LatencySummary serverQueue;
+    private final LatencySummary serverHandler;
+
+    public BreakdownSummary(LatencySummary client, LatencySummary network, LatencySummary serverQueue,
+                            LatencySummary serverHandler) {
+        this.client = client;
+        this.network = network;
+        this.serverQueue = serverQueue;
+        this.serverHandler = serverHandler;
+    }
+
+    public LatencySummary getClient() {
+        return client;
+    }
+
+    public LatencySummary getNetwork() {
+        return network;
+    }
+
+    public LatencySummary getServerQueue() {
+        return serverQueue;
+    }
+
+    public LatencySummary getServerHandler() {
+        return serverHandler;
+    }
+
+    @Override
+    public String toString() {
+        return "  client:         " + client + "\n"
+                + "  network:        " + network + "\n"
+                + "  server queue:   " + serverQueue + "\n"
+                + "  server handler: " + serverHandler;
+    }
+}
@@ -0,0 +1,108 @@
+package pingpong;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pingpong.messages.PingMessage;
+import pingpong.messages.PongMessage;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.function.BiConsumer;
+
+/**
+ * Connectionless transport for the Ping and Pong messages, to compare with the TCPChannel
+ * Each message is sent in its own UDP datagram, as its message id followed by the same bytes written by its serializer,
+ * so a message must fit in a datagram (MAX_DATAGRAM_SIZE bytes). There is no retransmission: a lost datagram is a lost
+ * ping or pong, detected by the ping timeout of the protocol.
+ * Datagrams are received by a dedicated thread, which deserializes them and hands them to a callback
+ */
+public class DatagramTransport {
+
+    private static final Logger logger = LogManager.getLogger(DatagramTransport.class);
+    public static final int MAX_DATAGRAM_SIZE = 65507; // maximum payload of an IPv4 UDP datagram
+
+    @SuppressWarnings("unchecked")
+    private static final ISerializer<PingMessage> pingSerializer = (ISerializer<PingMessage>) PingMessage.serializer;
+    @SuppressWarnings("unchecked")
+    private static final ISerializer<PongMessage> pongSerializer = (ISerializer<PongMessage>) PongMessage.serializer;
+
+    private final DatagramSocket socket;
+    private final BiConsumer<ProtoMessage, Host> receiver; // called by the receiving thread with each message
+
+    /**
+     * Binds the socket and starts the receiving thread
+     * @param address address to listen on
+     * @param port UDP port to listen on
+     * @param receiver called with each message received and its source
+     */
+    public DatagramTransport(String address, int port, BiConsumer<ProtoMessage, Host> receiver) throws IOException {
+        this.socket = new DatagramSocket(new InetSocketAddress(InetAddress.getByName(address), port));
+        this.receiver = receiver;
+        Thread thread = new Thread(this::receiveLoop, "DatagramTransport-" + port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sends a message in a datagram. Called by the Babel thread of the protocol
+     * @param msg the Ping or Pong message
+     * @param destination the destination (its UDP port is the port of the host)
+     * @return false if the message could not be sent (e.g., it does not fit in a datagram)
+     */
+    public boolean send(ProtoMessage msg, Host destination) {
+        ByteBuf out = Unpooled.buffer();
+        try {
+            out.writeShort(msg.getId());
+            if (msg instanceof PingMessage)
+                pingSerializer.serialize((PingMessage) msg, out);
+            else
+                pongSerializer.serialize((PongMessage) msg, out);
+            if (out.readableBytes() > MAX_DATAGRAM_SIZE) {
+                logger.warn("Message {} of {} bytes does not fit in a datagram", msg, out.readableBytes());
+                return false;
+            }
+            socket.send(new DatagramPacket(out.array(), out.arrayOffset() + out.readerIndex(), out.readableBytes(),
+                    destination.getAddress(), destination.getPort()));
+            return true;
+        } catch (IOException e) {
+            logger.warn("Failed to send datagram to {}: {}", destination, e.getMessage());
+            return false;
+        }
+    }
+
+    private void receiveLoop() {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                ByteBuf in = Unpooled.wrappedBuffer(buffer, packet.getOffset(), packet.getLength());
+                Host from = new Host(packet.getAddress(), packet.getPort());
+                short msgId = in.readShort();
+                // the payload is copied by the deserializers, so the buffer can be reused for the next datagram
+                if (msgId == PingMessage.MSG_ID)
+                    receiver.accept(pingSerializer.deserialize(in), from);
+                else if (msgId == PongMessage.MSG_ID)
+                    receiver.accept(pongSerializer.deserialize(in), from);
+                else
+                    logger.warn("Ignoring datagram with unknown message id {} from {}", msgId, from);
+            } catch (IOException | RuntimeException e) {
+                if (!socket.isClosed())
+                    logger.warn("Failed to receive datagram: {}", e.getMessage());
+            }
+        }
+    }
+
+    public void close() {
+        socket.close();
+    }
+}
@@ -0,0 +1,50 @@
+package pingpong;
+
+import pingpong.messages.PingTimestamps;
+
+/**
+ * Splits the RTTs of the pongs that carry timestamps into their components, each recorded in its own histogram:
+ * - client: time in the client, from the ping being sent by the protocol to the ping being serialized, plus from
+ *   the pong being deserialized to its handler starting (Babel event queue and channel of the client)
+ * - network: time on the wire, from the ping being serialized in the client to the pong being deserialized, minus the
+ *   time spent in the server
+ * - server queue: time from the ping being deserialized to its handler starting (Babel event queue of the server)
+ * - server handler: time from the ping handler starting to the pong being serialized (handler and channel of the server)
+ */
+public class LatencyBreakdown {
+
+    private final LatencyHistogram client;
+    private final LatencyHistogram network;
+    private final LatencyHistogram serverQueue;
+    private final LatencyHistogram serverHandler;
+
+    public LatencyBreakdown() {
+        this.client = new LatencyHistogram();
+        this.network = new LatencyHistogram();
+        this.serverQueue = new LatencyHistogram();
+        this.serverHandler = new LatencyHistogram();
+    }
+
+    /**
+     * @param timestamps the timestamps echoed by the pong
+     * @param sendNanos time when the protocol sent the ping
+     * @param handlerStartNanos time when the pong handler started
+     */
+    public void record(PingTimestamps timestamps, long sendNanos, long handlerStartNanos) {
+        long serverResidence = timestamps.getServerSend() - timestamps.getServerReceive();
+        client.recordValue((timestamps.getClientSend() - sendNanos)
+                + (handlerStartNanos - timestamps.getClientReceive()));
+        network.recordValue(timestamps.getClientReceive() - timestamps.getClientSend() - serverResidence);
+        serverQueue.recordValue(timestamps.getServerHandlerStart() - timestamps.getServerReceive());
+        serverHandler.recordValue(timestamps.getServerSend() - timestamps.getServerHandlerStart());
+    }
+
+    public long getCount() {
+        return network.getTotalCount();
+    }
+
+    public BreakdownSummary summarize() {
+        return new BreakdownSummary(new LatencySummary(client), new LatencySummary(network),
+                new LatencySummary(serverQueue), new LatencySummary(serverHandler));
+    }
+}
@@ -0,0 +1,65 @@
+package pingpong;
+
+/**
+ * Immutable summary of a LatencyHistogram, with all values in nanoseconds
+ */
+public class LatencySummary {
+
+    private final long count;
+    private final long min;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    public LatencySummary(LatencyHistogram histogram) {
+        this.count = histogram.getTotalCount();
+        this.min = histogram.getMinValue();
+        this.mean = histogram.getMean();
+        this.p50 = histogram.getValueAtPercentile(50.0);
+        this.p90 = histogram.getValueAtPercentile(90.0);
+        this.p99 = histogram.getValueAtPercentile(99.0);
+        this.p999 = histogram.getValueAtPercentile(99.9);
+        this.max = histogram.getMaxValue();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count, p50 / 1000.0, p90 / 1000.0, p99 / 1000.0, p999 / 1000.0, max / 1000.0);
+    }
+}
@@ -0,0 +1,85 @@
+package pingpong;
+
+import java.util.Arrays;
+
+/**
+ * Bounded table of the pings waiting for a pong, indexed by ping id.
+ * The table is a ring buffer of primitive arrays: ping ids are sequential, so the ping with id p is stored in the slot
+ * p mod capacity. When a new ping needs a slot that is still taken, the ping in that slot was sent capacity pings ago
+ * and never answered: it is expired (considered lost) and evicted.
+ * The table uses constant memory regardless of how many pings are sent, and adding or removing a ping never allocates.
+ */
+public class OutstandingPings {
+
+    public static final int NO_SESSION = -1;
+
+    private final int mask;
+    private final int[] pingIds;
+    private final int[] sessionIds; // NO_SESSION marks a free slot
+    private final long[] sendTimes;
+    private int size;
+
+    /**
+     * @param capacity maximum number of outstanding pings (rounded up to a power of two)
+     */
+    public OutstandingPings(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30))
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity)
+            slots <<= 1;
+        this.mask = slots - 1;
+        this.pingIds = new int[slots];
+        this.sessionIds = new int[slots];
+        this.sendTimes = new long[slots];
+        Arrays.fill(sessionIds, NO_SESSION);
+        this.size = 0;
+    }
+
+    /**
+     * Adds a ping to the table
+     * @param pingId id of the ping
+     * @param sessionId id of the session of the ping
+     * @param sendTimeNanos time (System.nanoTime) at which the ping was sent
+     * @return the session id of the expired ping evicted from the slot, or NO_SESSION if the slot was free
+     */
+    public int add(int pingId, int sessionId, long sendTimeNanos) {
+        int slot = pingId & mask;
+        int evicted = sessionIds[slot];
+        if (evicted == NO_SESSION)
+            size++;
+        pingIds[slot] = pingId;
+        sessionIds[slot] = sessionId;
+        sendTimes[slot] = sendTimeNanos;
+        return evicted;
+    }
+
+    /**
+     * @param pingId id of the ping
+     * @return the session id of the ping, or NO_SESSION if the ping is not outstanding (answered or expired)
+     */
+    public int getSessionId(int pingId) {
+        int slot = pingId & mask;
+        return pingIds[slot] == pingId ? sessionIds[slot] : NO_SESSION;
+    }
+
+    /**
+     * Removes a ping from the table. Must only be called for outstanding pings (see getSessionId).
+     * @param pingId id of the ping
+     * @return the time (System.nanoTime) at which the ping was sent
+     */
+    public long remove(int pingId) {
+        int slot = pingId & mask;
+        sessionIds[slot] = NO_SESSION;
+        size--;
+        return sendTimes[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -10,39 +10,78 @@ import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
 import pt.unl.fct.di.novasys.channel.tcp.TCPChannel;
 import pt.unl.fct.di.novasys.channel.tcp.events.*;
 import pt.unl.fct.di.novasys.network.data.Host;
+import pingpong.requests.DatagramReceived;
 import pingpong.requests.PingRequest;
-import pingpong.requests.PongReply;
+import pingpong.timers.IdleConnectionTimer;
 import pingpong.timers.NextPingTimer;
+import pingpong.timers.PingTimeoutTimer;
 import utils.NetworkingUtilities;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Properties;
+import java.util.*;
 
 public class PingPongProtocol extends GenericProtocol {
 
     public static final int DEFAULT_PORT = 9000; // default port to listen on
     private static final Logger logger = LogManager.getLogger(PingPongProtocol.class); // logger for the protocol
     public static final short PROTO_ID = 1; // unique protocol id
+    public static final int DEFAULT_MAX_OUTSTANDING_PINGS = 65536; // default size of the outstanding pings table
+    public static final int DEFAULT_PING_TIMEOUT = 5000; // default time to wait for a pong before the ping is lost (ms)
+    public static final int TIMEOUT_TICKS = 16; // precision of the ping timeouts (timeout / TIMEOUT_TICKS)
+    public static final int DEFAULT_IDLE_TIMEOUT = 30000; // default time an unused connection is kept open (ms)
 
+    private final int shard; // index of this instance, when running several instances of the protocol (shards)
     private int channelId; // id of the channel used by the protocol
+    private DatagramTransport datagramTransport; // connectionless transport on the same port number as the channel, or null
 
     private int nextPingId = 0; // id of the next ping message to send
+    private int nextSessionId = 0; // id of the next ping session
     private int pingIntervalMillis = 10; // interval between pings
+    private int pingTimeoutMillis = DEFAULT_PING_TIMEOUT; // time to wait for a pong, 0 to wait forever
+    private boolean pingTimestamps = false; // whether pings carry timestamps to split their RTTs into components
+    private int idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT; // time an unused connection is kept open, 0 to close it at once
 
-    private PingState ongoingPing; // state of the ongoing ping
+    private final Map<Integer, PingState> sessions = new HashMap<>(); // ongoing ping sessions (session id -> state)
+    private final Set<Host> connectedHosts = new HashSet<>(); // destinations with an established connection
+    private final Set<Host> pendingHosts = new HashSet<>(); // destinations we are connecting to
+    private final Map<Host, Long> idleHosts = new HashMap<>(); // connected destinations without sessions -> idle since (ms)
 
-    private Map<Integer, Long> ongoingPings = new HashMap<>(); // map of ongoing pings (id -> send time)
+    private OutstandingPings ongoingPings; // pings waiting for a pong (id -> session and send time in nanoseconds)
+    private final Deque<Integer> evictedSessions = new ArrayDeque<>(); // sessions of the pings evicted from the table
+    private boolean handlingEvictions = false; // whether the evicted pings are being handled (up the call stack)
+    private PingTimeoutWheel pingDeadlines; // deadlines of the outstanding pings, null if pings never time out
 
     public PingPongProtocol() {
+        this(0);
+    }
+
+    /**
+     * Creates one of several instances (shards) of the protocol, each with its own Babel event thread
+     * Shard i uses the protocol ID PROTO_ID + i and listens on the configured port + i
+     * @param shard index of the shard
+     */
+    public PingPongProtocol(int shard) {
         // The super constructor receives the protocol name and the (unique) protocol ID
-        super("PingPong", PROTO_ID);
+        super(shard == 0 ? "PingPong" : "PingPong-" + shard, shardProtoId(shard));
+        this.shard = shard;
+    }
 
+    /**
+     * @param shard index of the shard
+     * @return the protocol ID of the given shard
+     */
+    public static short shardProtoId(int shard) {
+        return (short) (PROTO_ID + shard);
     }
 
     public void init(Properties props) throws IOException, HandlerRegistrationException {
 
+        pingIntervalMillis = Integer.parseInt(props.getProperty("ping_interval", String.valueOf(pingIntervalMillis)));
+        ongoingPings = new OutstandingPings(Integer.parseInt(props.getProperty("max_outstanding_pings",
+                String.valueOf(DEFAULT_MAX_OUTSTANDING_PINGS))));
+        pingTimeoutMillis = Integer.parseInt(props.getProperty("ping_timeout", String.valueOf(pingTimeoutMillis)));
+        pingTimestamps = Boolean.parseBoolean(props.getProperty("ping_timestamps", String.valueOf(pingTimestamps)));
+        idleTimeoutMillis = Integer.parseInt(props.getProperty("idle_timeout", String.valueOf(idleTimeoutMillis)));
 
         Properties channelProps = new Properties();
         // configuration of the network channel
@@ -58,18 +97,29 @@ public class PingPongProtocol extends GenericProtocol {
             channelProps.setProperty(TCPChannel.ADDRESS_KEY, NetworkingUtilities.getAddress("eth0"));
         }
 
-        // set network port to listen on
+        // set network port to listen on (each shard listens on the next port)
         if (props.containsKey("port")) {
             // if port is defined, used defined port
-            channelProps.setProperty(TCPChannel.PORT_KEY, props.getProperty("port"));
+            channelProps.setProperty(TCPChannel.PORT_KEY, Integer.parseInt(props.getProperty("port")) + shard + "");
         }else
             // else use default value
-            channelProps.setProperty(TCPChannel.PORT_KEY, DEFAULT_PORT + "");
+            channelProps.setProperty(TCPChannel.PORT_KEY, DEFAULT_PORT + shard + "");
 
 
         // create the channel with the provided properties
         channelId = createChannel(TCPChannel.NAME, channelProps);
 
+        logger.debug("{} initialized, running on {}:{}", getProtoName(),
+                channelProps.getProperty(TCPChannel.ADDRESS_KEY), channelProps.getProperty(TCPChannel.PORT_KEY));
+
+        // if enabled, the UDP transport listens on the same port number as the channel
+        if (Boolean.parseBoolean(props.getProperty("udp", "false"))) {
+            datagramTransport = new DatagramTransport(channelProps.getProperty(TCPChannel.ADDRESS_KEY),
+                    Integer.parseInt(channelProps.getProperty(TCPChannel.PORT_KEY)),
+                    (msg, from) -> sendRequest(new DatagramReceived(msg, from), getProtoId()));
+            Runtime.getRuntime().addShutdownHook(new Thread(datagramTransport::close));
+        }
+
         // register channel event handlers
         registerChannelEventHandler(channelId, InConnectionDown.EVENT_ID, this::uponInConnectionDown);
         registerChannelEventHandler(channelId, InConnectionUp.EVENT_ID, this::uponInConnectionUp);
@@ -88,72 +138,299 @@ public class PingPongProtocol extends GenericProtocol {
 
         // register timer handlers
         registerTimerHandler(NextPingTimer.TIMER_ID, this::uponNextPing);
+        registerTimerHandler(IdleConnectionTimer.TIMER_ID, this::uponIdleConnectionTimer);
+        registerTimerHandler(PingTimeoutTimer.TIMER_ID, this::uponPingTimeoutTimer);
 
         // register request handlers
         registerRequestHandler(PingRequest.REQUEST_ID, this::uponReceivePingRequest);
+        registerRequestHandler(DatagramReceived.REQUEST_ID, this::uponDatagramReceived);
+
+        // setup the single timer that sweeps the deadlines of all the outstanding pings
+        if (pingTimeoutMillis > 0) {
+            pingDeadlines = new PingTimeoutWheel(pingTimeoutMillis * 1_000_000L, TIMEOUT_TICKS, System.nanoTime());
+            long tickMillis = Math.max(1, pingDeadlines.getTickNanos() / 1_000_000);
+            setupPeriodicTimer(new PingTimeoutTimer(), tickMillis, tickMillis);
+        }
+
+        // setup the timer that closes the connections that have been idle for too long
+        if (idleTimeoutMillis > 0) {
+            long checkInterval = Math.max(1, idleTimeoutMillis / 2);
+            setupPeriodicTimer(new IdleConnectionTimer(), checkInterval, checkInterval);
+        }
 
     }
 
+    /**
+     * Handle a Ping Request
+     * Create one ping session per destination, all running in parallel with any other ongoing session
+     * @param pingRequest PingRequest
+     * @param sourceProtocol protocol that sent the request
+     */
     private void uponReceivePingRequest(PingRequest pingRequest, short sourceProtocol) {
-        ongoingPing = new PingState(pingRequest, sourceProtocol);
-        logger.debug("Received ping request to {}. Sending {} pings.",
-                pingRequest.getDestination(), pingRequest.getNPings());
-        openConnection(pingRequest.getDestination(), channelId);
+        if (pingRequest.isPipelined())
+            logger.debug("Received ping request to {}. Sending {} pings with a window of {}.",
+                    pingRequest.getDestinations(), pingRequest.getNPings(), pingRequest.getWindow());
+        else
+            logger.debug("Received ping request to {}. Sending {} pings.",
+                    pingRequest.getDestinations(), pingRequest.getNPings());
+        // a window larger than the outstanding pings table would evict the pings of the session itself
+        int window = Math.min(pingRequest.getWindow(), ongoingPings.capacity());
+        if (window < pingRequest.getWindow())
+            logger.warn("Window of {} is larger than the outstanding pings table, using a window of {}",
+                    pingRequest.getWindow(), window);
+
+        // without a timeout, a session would wait forever for the pong of a lost datagram
+        if (pingRequest.isDatagram() && (datagramTransport == null || pingTimeoutMillis <= 0)) {
+            logger.error("Rejecting UDP ping request to {}: {}", pingRequest.getDestinations(),
+                    datagramTransport == null ? "the UDP transport is not enabled" : "there is no ping timeout");
+            // reply to each destination without sending any ping
+            for (Host destination : pingRequest.getDestinations())
+                sendReply(new PingState(++nextSessionId, pingRequest, destination, sourceProtocol, window)
+                        .produceReply(), sourceProtocol);
+            return;
+        }
+
+        for (Host destination : pingRequest.getDestinations()) {
+            PingState session = new PingState(++nextSessionId, pingRequest, destination, sourceProtocol, window);
+            sessions.put(session.getSessionId(), session);
+            if (pingRequest.isDatagram()) {
+                // no connection to open, datagrams are sent right away
+                startSession(session);
+            } else if (connectedHosts.contains(destination)) {
+                // reuse the connection, the RTTs of the session do not include the connection setup
+                idleHosts.remove(destination);
+                startSession(session);
+            } else if (pendingHosts.add(destination)) {
+                openConnection(destination, channelId);
+            } // else the session starts when the pending connection is up
+        }
     }
 
     /**
      * Handle a Timer event
-     * Send a Ping message to the pingTarget
+     * Send the next Ping message of the session of the timer
      * @param timer NextPingTimer
      * @param timerId Timer ID
      */
     private void uponNextPing(NextPingTimer timer, long timerId) {
-        // send a ping message to target
-        sendPingMessage(ongoingPing.getRequest().getDestination(), ongoingPing.getRequest().getMessage());
+        PingState session = sessions.get(timer.getSessionId());
+        if (session == null) // the session was aborted
+            return;
 
-        // increment the number of sent pings in the timer
-        timer.incrementSentPings();
+        // send a ping message to target
+        sendNextPing(session);
 
-        if (timer.getSentPings() < ongoingPing.getRequest().getNPings()) {
+        if (session.hasPingsToSend()) {
             // set the timer to fire again after the pingIntervalMillis
             setupTimer(timer, pingIntervalMillis);
         }
 
     }
 
+    /**
+     * Handle the PingTimeoutTimer
+     * Expire the outstanding pings whose deadline has passed
+     * @param timer PingTimeoutTimer
+     * @param timerId Timer ID
+     */
+    private void uponPingTimeoutTimer(PingTimeoutTimer timer, long timerId) {
+        long now = System.nanoTime();
+        pingDeadlines.advance(now, pingId -> {
+            int sessionId = ongoingPings.getSessionId(pingId);
+            if (sessionId == OutstandingPings.NO_SESSION) // already answered or expired
+                return;
+            logger.debug("Ping {} timed out", pingId);
+            ongoingPings.remove(pingId);
+            uponPingExpired(sessionId);
+        });
+    }
+
+    /**
+     * Handle the IdleConnectionTimer
+     * Close the connections that have not been used by any session for longer than the idle timeout
+     * @param timer IdleConnectionTimer
+     * @param timerId Timer ID
+     */
+    private void uponIdleConnectionTimer(IdleConnectionTimer timer, long timerId) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Host, Long>> it = idleHosts.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Host, Long> entry = it.next();
+            if (now - entry.getValue() >= idleTimeoutMillis) {
+                logger.debug("Closing connection to {}, idle for {} ms", entry.getKey(), now - entry.getValue());
+                it.remove();
+                connectedHosts.remove(entry.getKey());
+                closeConnection(entry.getKey(), channelId);
+            }
+        }
+    }
+
     /**
      * Handle when an open connection operation succeeded
-     * Start the periodic timer to send Ping pingpong.messages
+     * Start all the sessions waiting for this destination
      * @param event OutConnectionUp event
      * @param channel Channel ID
      */
     private void uponOutConnectionUp(OutConnectionUp event, int channel) {
-        logger.debug("Connection to {} is now up", event.getNode());
-        // start the timer
-        uponNextPing(new NextPingTimer(), -1);
+        Host destination = event.getNode();
+        logger.debug("Connection to {} is now up", destination);
+        pendingHosts.remove(destination);
+        connectedHosts.add(destination);
+        boolean used = false;
+        for (PingState session : new ArrayList<>(sessions.values())) {
+            if (session.getDestination().equals(destination) && !session.isStarted()) {
+                startSession(session);
+                used = true;
+            }
+        }
+        if (!used) // the sessions were aborted meanwhile, let the idle timer close the connection
+            idleHosts.put(destination, System.currentTimeMillis());
     }
 
     /**
      * Handle when an open connection operation has failed
-     * Print error message and exit
+     * Abort all the sessions waiting for this destination
      * @param event OutConnectionFailed event
      * @param channel Channel ID
      */
     private void uponOutConnectionFailed(OutConnectionFailed<ProtoMessage> event, int channel) {
-        logger.debug(event);
-        System.exit(1);
+        logger.warn(event);
+        pendingHosts.remove(event.getNode());
+        abortSessions(event.getNode());
+    }
+
+    /**
+     * Start sending Ping messages of a session, either paced by the timer or filling the window of outstanding pings
+     * @param session the session to start
+     */
+    private void startSession(PingState session) {
+        session.markStarted();
+        if (session.getRequest().isPipelined()) {
+            // fill the window, each pong will then release the next ping
+            fillWindow(session);
+        } else {
+            // start the timer
+            uponNextPing(new NextPingTimer(session.getSessionId()), -1);
+        }
+    }
+
+    /**
+     * Send Ping messages of a pipelined session until its window of outstanding pings is full
+     * @param session the session
+     */
+    private void fillWindow(PingState session) {
+        while (session.hasPingsToSend() && session.getOutstandingPings() < session.getWindow())
+            sendNextPing(session);
+    }
+
+    /**
+     * Finish a session: reply to the requester with the summary of the RTTs and, if no other session is using the
+     * destination, keep the connection open (idle) for the next sessions, or close it if there is no idle timeout
+     * @param session the finished session
+     */
+    private void finishSession(PingState session) {
+        sessions.remove(session.getSessionId());
+        sendReply(session.produceReply(), session.getRequestSource());
+        Host destination = session.getDestination();
+        if (session.getRequest().isDatagram())
+            return;
+        for (PingState other : sessions.values()) {
+            if (other.getDestination().equals(destination) && !other.getRequest().isDatagram())
+                return;
+        }
+        if (!connectedHosts.contains(destination))
+            return;
+        if (idleTimeoutMillis > 0) {
+            idleHosts.put(destination, System.currentTimeMillis());
+        } else {
+            connectedHosts.remove(destination);
+            closeConnection(destination, channelId);
+        }
+    }
+
+    /**
+     * Finish all sessions to a destination that can no longer be reached, replying with the pongs received so far
+     * @param destination the unreachable destination
+     */
+    private void abortSessions(Host destination) {
+        for (PingState session : new ArrayList<>(sessions.values())) {
+            if (session.getDestination().equals(destination) && !session.getRequest().isDatagram()) {
+                logger.warn("Aborting ping session to {} after {} of {} pongs", destination,
+                        session.getReceivedPongs(), session.getRequest().getNPings());
+                sessions.remove(session.getSessionId());
+                sendReply(session.produceReply(), session.getRequestSource());
+            }
+        }
+    }
+
+    /**
+     * Send the next Ping message of a session
+     * @param session the session
+     */
+    private void sendNextPing(PingState session) {
+        int pingId = ++nextPingId;
+        long now = System.nanoTime();
+        session.incrementSentPings(now);
+        int expiredSession = ongoingPings.add(pingId, session.getSessionId(), now);
+        if (pingDeadlines != null)
+            pingDeadlines.add(pingId, now);
+        PingRequest request = session.getRequest();
+        PingMessage ping;
+        if (request.getPayload() != null)
+            ping = new PingMessage(pingId, request.getPayload());
+        else
+            ping = new PingMessage(pingId, request.getMessage());
+        if (pingTimestamps)
+            ping.enableTimestamps();
+        if (request.isDatagram())
+            datagramTransport.send(ping, session.getDestination()); // if it fails, the ping times out
+        else
+            sendPingMessage(session.getDestination(), ping);
+        if (expiredSession != OutstandingPings.NO_SESSION) {
+            evictedSessions.add(expiredSession);
+            handleEvictions();
+        }
     }
 
+    /**
+     * Handle the pings evicted from the outstanding pings table, which happens when the windows of the concurrent
+     * sessions add up to more than its capacity
+     * Each expired ping may release the next ping of its session, which may evict another ping: the evictions are
+     * handled in a loop by the outermost call, instead of recursively
+     */
+    private void handleEvictions() {
+        if (handlingEvictions)
+            return;
+        handlingEvictions = true;
+        while (!evictedSessions.isEmpty())
+            uponPingExpired(evictedSessions.poll());
+        handlingEvictions = false;
+    }
 
     /**
-     * Send Ping message to Host destination with the given string message
+     * Send Ping message to Host destination
      * @param destination Host destination
-     * @param message String message
+     * @param ping the Ping message
+     */
+    public void sendPingMessage(Host destination, PingMessage ping) {
+        logger.debug("Sending Ping Message {} to {}", ping.getPingId(), destination);
+        sendMessage(channelId, ping, destination);
+    }
+
+    /**
+     * Handle a ping that timed out, or was evicted from the outstanding pings table, without being answered
+     * Count it as lost and, in pipelined mode, release the next ping
+     * @param sessionId the session of the lost ping
      */
-    public void sendPingMessage(Host destination, String message) {
-        logger.debug("Sending Ping Message to {} with message {}", destination, message);
-        ongoingPings.put(++nextPingId, System.currentTimeMillis());
-        sendMessage(channelId, new PingMessage(nextPingId, message), destination);
+    private void uponPingExpired(int sessionId) {
+        PingState session = sessions.get(sessionId);
+        if (session == null) // the session was aborted
+            return;
+        session.recordLostPing();
+        if (session.getRequest().isPipelined())
+            fillWindow(session);
+        if (session.isDone())
+            finishSession(session);
     }
 
     /**
@@ -165,26 +442,65 @@ public class PingPongProtocol extends GenericProtocol {
      * @param channelId Source channel ID (from which channel was the message was received)
      */
     public void uponReceivePingMessage(PingMessage msg, Host from, short sourceProto, int channelId) {
-        logger.debug("Received PingMessage with id: {} and message: {}", msg.getPingId(), msg.getMessage());
+        if (msg.getTimestamps() != null)
+            msg.getTimestamps().setServerHandlerStart(System.nanoTime());
+        logger.debug("Received PingMessage with id: {}", msg.getPingId());
         // use connection created by client (TCPChannel.CONNECTION_IN) to reply with pong message
-        sendMessage(channelId, new PongMessage(msg.getPingId(), msg.getMessage()), from, TCPChannel.CONNECTION_IN);
+        // the pong echoes the payload of the ping as is, the server never decodes it
+        sendMessage(channelId, PongMessage.echo(msg), from, TCPChannel.CONNECTION_IN);
+    }
+
+    /**
+     * Handle a message received by the DatagramTransport, which it sent to this protocol as a request to be handled in
+     * the Babel thread of the protocol
+     * Pings are answered with a pong sent in a datagram to the source of the ping, pongs are handled as the ones
+     * received from the channel
+     * @param request the received message and its source
+     * @param sourceProto Source protocol ID (this protocol)
+     */
+    private void uponDatagramReceived(DatagramReceived request, short sourceProto) {
+        if (request.getMessage() instanceof PingMessage) {
+            PingMessage msg = (PingMessage) request.getMessage();
+            if (msg.getTimestamps() != null)
+                msg.getTimestamps().setServerHandlerStart(System.nanoTime());
+            logger.debug("Received PingMessage with id {} in a datagram", msg.getPingId());
+            datagramTransport.send(PongMessage.echo(msg), request.getFrom());
+        } else {
+            uponReceivePongMessage((PongMessage) request.getMessage(), request.getFrom(), sourceProto, -1);
+        }
     }
 
     /**
      * Handle a newly received Pong Message
-     * Print received pingId and message
+     * Record the RTT and, in pipelined mode, release the next ping
+     * Once all pongs are received, reply to the requester with the summary of the RTTs
      * @param msg PongMessage
      * @param from Source Host
      * @param sourceProto Source protocol ID
      * @param channelId Source channel ID (from which channel was the message was received)
      */
     public void uponReceivePongMessage(PongMessage msg, Host from, short sourceProto, int channelId) {
-        logger.debug("Received PongMessage with id: {} and message: {}", msg.getPingId(), msg.getMessage());
-        ongoingPing.incrementReceivedPongs();
-        PongReply reply = ongoingPing.getRequest().produceReply(System.currentTimeMillis() - ongoingPings.get(msg.getPingId()));
-        sendReply(reply, ongoingPing.getRequestSource());
-        if (ongoingPing.isDone()) {
-            closeConnection(from);
+        long now = System.nanoTime();
+        logger.debug("Received PongMessage with id: {}", msg.getPingId());
+        int sessionId = ongoingPings.getSessionId(msg.getPingId());
+        if (sessionId == OutstandingPings.NO_SESSION) {
+            logger.debug("Ignoring PongMessage {} of an expired ping", msg.getPingId());
+            return;
+        }
+        long sendTime = ongoingPings.remove(msg.getPingId());
+        PingState session = sessions.get(sessionId);
+        if (session == null) {
+            logger.debug("Ignoring PongMessage {} of an aborted session", msg.getPingId());
+            return;
+        }
+        session.recordPong(now - sendTime, now);
+        if (msg.getTimestamps() != null)
+            session.recordTimestamps(msg.getTimestamps(), sendTime, now);
+        if (session.getRequest().isPipelined() && session.hasPingsToSend()) {
+            sendNextPing(session);
+        }
+        if (session.isDone()) {
+            finishSession(session);
         }
     }
 
@@ -223,12 +539,16 @@ public class PingPongProtocol extends GenericProtocol {
 
     /**
      * Handle the case when a connection to a remote node went down or was closed
-     * Print the event
+     * Print the event and abort the sessions that were still using it
      * @param event the event containing the connection information
      * @param channel the channel ID (from which channel the event was received)
      */
     private void uponOutConnectionDown(OutConnectionDown event, int channel) {
         logger.warn(event);
+        connectedHosts.remove(event.getNode());
+        idleHosts.remove(event.getNode());
+        if (!pendingHosts.contains(event.getNode())) // else a new connection is already being opened for new sessions
+            abortSessions(event.getNode());
     }
 
 }
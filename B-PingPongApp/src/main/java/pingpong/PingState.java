@@ -1,32 +1,112 @@
 package pingpong;
 
+import pingpong.messages.PingTimestamps;
 import pingpong.requests.PingRequest;
+import pingpong.requests.PongReply;
+import pt.unl.fct.di.novasys.network.data.Host;
 
 public class PingState {
 
+    private final int sessionId;
     private final PingRequest request;
+    private final Host destination;
     private final short requestSource;
+    private final int window; // maximum number of outstanding pings, the window of the request bounded by the table
+    private final LatencyHistogram rttHistogram; // RTTs of the received pongs (in nanoseconds)
+    private final LatencyBreakdown breakdown; // components of the RTTs of the pongs with timestamps
+    private boolean started;
+    private int sentPings;
     private int receivedPongs;
-    public PingState(PingRequest request, short requestSource) {
+    private int lostPings; // pings that expired without a pong
+    private long startNanos; // time when the first ping was sent
+    private long lastPongNanos; // time when the last pong was received
+    public PingState(int sessionId, PingRequest request, Host destination, short requestSource, int window) {
+        this.sessionId = sessionId;
         this.request = request;
+        this.destination = destination;
         this.requestSource = requestSource;
+        this.window = window;
+        this.rttHistogram = new LatencyHistogram();
+        this.breakdown = new LatencyBreakdown();
+        this.started = false;
+        this.sentPings = 0;
         this.receivedPongs = 0;
+        this.lostPings = 0;
+    }
+
+    public int getSessionId() {
+        return sessionId;
     }
 
     public PingRequest getRequest() {
         return request;
     }
 
+    public Host getDestination() {
+        return destination;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public void markStarted() {
+        started = true;
+    }
+
+    public int getSentPings() {
+        return sentPings;
+    }
+
+    public void incrementSentPings(long nowNanos) {
+        if (sentPings == 0)
+            startNanos = nowNanos;
+        sentPings++;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public boolean hasPingsToSend() {
+        return sentPings < request.getNPings();
+    }
+
+    public int getOutstandingPings() {
+        return sentPings - receivedPongs - lostPings;
+    }
+
     public int getReceivedPongs() {
         return receivedPongs;
     }
 
-    public void incrementReceivedPongs() {
+    public void recordPong(long rttNanos, long nowNanos) {
+        rttHistogram.recordValue(rttNanos);
+        lastPongNanos = nowNanos;
         receivedPongs++;
     }
 
+    public void recordTimestamps(PingTimestamps timestamps, long sendNanos, long handlerStartNanos) {
+        breakdown.record(timestamps, sendNanos, handlerStartNanos);
+    }
+
+    public int getLostPings() {
+        return lostPings;
+    }
+
+    public void recordLostPing() {
+        lostPings++;
+    }
+
+    public PongReply produceReply() {
+        long durationNanos = receivedPongs == 0 ? 0 : lastPongNanos - startNanos;
+        BreakdownSummary breakdownSummary = breakdown.getCount() == 0 ? null : breakdown.summarize();
+        return request.produceReply(destination, new LatencySummary(rttHistogram), breakdownSummary, lostPings,
+                durationNanos);
+    }
+
     public boolean isDone() {
-        return receivedPongs == request.getNPings();
+        return receivedPongs + lostPings == request.getNPings();
     }
 
     public short getRequestSource() {
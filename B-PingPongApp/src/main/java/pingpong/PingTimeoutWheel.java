@@ -0,0 +1,122 @@
+package pingpong;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hashed timer wheel with the deadlines of the outstanding pings.
+ * Time is split into ticks and each slot of the wheel keeps, in primitive arrays, the ids of the pings whose deadline
+ * falls in one of the ticks mapped to it, with the deadline tick of each ping. A single periodic timer advances the
+ * wheel and hands the ids of the due pings to a callback, so the cost of a timeout is an array append when the ping is
+ * sent, regardless of how many pings are outstanding, instead of one Babel timer per ping.
+ * Pings are never removed from the wheel when their pong arrives: the callback must check if the ping is still
+ * outstanding (lazy deletion), which is a single array lookup in OutstandingPings.
+ * All pings use the same timeout, so while the sweep timer is on time a slot only holds pings of the same tick. When it
+ * runs late, pings sent meanwhile may fall in a slot with pings of an earlier round: a slot only hands over the pings
+ * whose deadline tick has passed, and keeps the others for its next round.
+ */
+public class PingTimeoutWheel {
+
+    private static final int INITIAL_SLOT_CAPACITY = 16;
+
+    private final long timeoutNanos;
+    private final long tickNanos;
+    private final int mask;
+    private final int[][] slots; // ping ids of each slot
+    private final long[][] slotTicks; // deadline tick of each ping of each slot
+    private final int[] slotSizes;
+    private int[] spareIds; // empty arrays swapped into the slot being swept, so the callbacks may add pings to it
+    private long[] spareTicks;
+    private long nextTick; // next tick to sweep (System.nanoTime / tickNanos)
+    private int size;
+
+    /**
+     * @param timeoutNanos time a ping waits for its pong before being considered lost
+     * @param ticksPerTimeout number of ticks in a timeout (the precision of the deadlines is timeout / ticksPerTimeout)
+     * @param nowNanos current time (System.nanoTime)
+     */
+    public PingTimeoutWheel(long timeoutNanos, int ticksPerTimeout, long nowNanos) {
+        if (timeoutNanos <= 0 || ticksPerTimeout < 1)
+            throw new IllegalArgumentException("Invalid timeout: " + timeoutNanos + "ns in " + ticksPerTimeout + " ticks");
+        this.timeoutNanos = timeoutNanos;
+        this.tickNanos = Math.max(1, timeoutNanos / ticksPerTimeout);
+        int nSlots = Integer.highestOneBit(ticksPerTimeout + 2) << 1;
+        this.mask = nSlots - 1;
+        this.slots = new int[nSlots][INITIAL_SLOT_CAPACITY];
+        this.slotTicks = new long[nSlots][INITIAL_SLOT_CAPACITY];
+        this.slotSizes = new int[nSlots];
+        this.spareIds = new int[INITIAL_SLOT_CAPACITY];
+        this.spareTicks = new long[INITIAL_SLOT_CAPACITY];
+        this.nextTick = nowNanos / tickNanos;
+        this.size = 0;
+    }
+
+    /**
+     * Adds the deadline of a ping
+     * @param pingId id of the ping
+     * @param sendTimeNanos time (System.nanoTime) at which the ping was sent
+     */
+    public void add(int pingId, long sendTimeNanos) {
+        long deadline = sendTimeNanos + timeoutNanos;
+        // first tick not before the deadline, and never a tick already swept
+        long tick = Math.max(nextTick, (deadline + tickNanos - 1) / tickNanos);
+        append((int) (tick & mask), pingId, tick);
+        size++;
+    }
+
+    private void append(int slot, int pingId, long tick) {
+        int slotSize = slotSizes[slot];
+        if (slotSize == slots[slot].length) {
+            slots[slot] = Arrays.copyOf(slots[slot], slotSize * 2);
+            slotTicks[slot] = Arrays.copyOf(slotTicks[slot], slotSize * 2);
+        }
+        slots[slot][slotSize] = pingId;
+        slotTicks[slot][slotSize] = tick;
+        slotSizes[slot] = slotSize + 1;
+    }
+
+    /**
+     * Sweeps all the ticks up to now, handing the ids of the pings whose deadline has passed to the callback
+     * @param nowNanos current time (System.nanoTime)
+     * @param onDeadline called with the id of each due ping, which may have been answered meanwhile
+     */
+    public void advance(long nowNanos, IntConsumer onDeadline) {
+        long lastTick = nowNanos / tickNanos;
+        if (lastTick < nextTick)
+            return;
+        // if the timer is late by more than a round, each slot is swept once
+        long firstTick = Math.max(nextTick, lastTick - mask);
+        nextTick = lastTick + 1; // pings added by the callbacks are due after this sweep
+        for (long tick = firstTick; tick <= lastTick && size > 0; tick++) {
+            int slot = (int) (tick & mask);
+            int[] pingIds = slots[slot];
+            long[] ticks = slotTicks[slot];
+            int slotSize = slotSizes[slot];
+            // detach the slot, the callbacks and the pings kept for the next round are added to the spare arrays
+            slots[slot] = spareIds;
+            slotTicks[slot] = spareTicks;
+            slotSizes[slot] = 0;
+            for (int i = 0; i < slotSize; i++) {
+                if (ticks[i] <= lastTick) {
+                    size--;
+                    onDeadline.accept(pingIds[i]);
+                } else {
+                    append(slot, pingIds[i], ticks[i]);
+                }
+            }
+            spareIds = pingIds;
+            spareTicks = ticks;
+        }
+    }
+
+    /**
+     * @return number of deadlines in the wheel, including the ones of pings already answered
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+}
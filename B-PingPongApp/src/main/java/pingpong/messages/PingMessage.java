@@ -9,11 +9,22 @@ public class PingMessage extends ProtoMessage {
     public static final short MSG_ID = 101;
 
     private final int pingId;
-    private final String message;
+    private String message; // decoded lazily from the payload, for messages received from the network
+    private final ByteBuf payload; // UTF-8 bytes of the message received from the network, or a binary payload
+    private PingTimestamps timestamps; // null if the message does not carry timestamps
+
     public PingMessage(int pingId, String message) {
         super(MSG_ID);
         this.pingId = pingId;
         this.message = message;
+        this.payload = null;
+    }
+
+    public PingMessage(int pingId, ByteBuf payload) {
+        super(MSG_ID);
+        this.pingId = pingId;
+        this.message = null;
+        this.payload = payload;
     }
 
     public int getPingId() {
@@ -21,19 +32,60 @@ public class PingMessage extends ProtoMessage {
     }
 
     public String getMessage() {
+        if (message == null)
+            message = Utils.toUTF8String(payload);
         return message;
     }
 
+    /**
+     * Makes the message carry timestamps, the client send timestamp is taken when the message is serialized
+     */
+    public void enableTimestamps() {
+        timestamps = new PingTimestamps();
+    }
+
+    /**
+     * @return the timestamps of the message, or null if it does not carry timestamps
+     */
+    public PingTimestamps getTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * @return the UTF-8 bytes of the message received from the network, or the binary payload (null otherwise)
+     */
+    public ByteBuf getPayload() {
+        return payload;
+    }
+
     public static ISerializer<? extends ProtoMessage> serializer = new ISerializer<PingMessage>() {
         public void serialize(PingMessage msg, ByteBuf out) {
             out.writeInt(msg.pingId);
-            Utils.encodeUTF8(msg.message, out);
+            if (msg.timestamps != null) {
+                out.writeByte(PingTimestamps.WITH_TIMESTAMPS);
+                msg.timestamps.setClientSend(System.nanoTime());
+                out.writeLong(msg.timestamps.getClientSend());
+            } else {
+                out.writeByte(PingTimestamps.NO_TIMESTAMPS);
+            }
+            if (msg.payload != null)
+                Utils.writeUTF8Bytes(msg.payload, out);
+            else
+                Utils.encodeUTF8(msg.message, out);
         }
 
         public PingMessage deserialize(ByteBuf in) {
             int pingId = in.readInt();
-            String message = Utils.decodeUTF8(in);
-            return new PingMessage(pingId, message);
+            PingTimestamps timestamps = null;
+            if (in.readByte() == PingTimestamps.WITH_TIMESTAMPS) {
+                timestamps = new PingTimestamps();
+                timestamps.setServerReceive(System.nanoTime());
+                timestamps.setClientSend(in.readLong());
+            }
+            ByteBuf payload = Utils.readUTF8Bytes(in);
+            PingMessage msg = new PingMessage(pingId, payload);
+            msg.timestamps = timestamps;
+            return msg;
         }
     };
 
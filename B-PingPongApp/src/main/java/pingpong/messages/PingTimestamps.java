@@ -0,0 +1,61 @@
+package pingpong.messages;
+
+/**
+ * Timestamps (System.nanoTime) carried by a PingMessage and echoed back by its PongMessage, to split the RTT of a ping
+ * into the time spent in the client, in the network and in the server
+ * Each timestamp is taken by the process that sets it, so only differences between timestamps of the same process are
+ * meaningful: the clocks of the client and of the server are never compared
+ */
+public class PingTimestamps {
+    /**
+     * Flag written after the ping id, telling whether the message carries timestamps
+     */
+    public static final byte NO_TIMESTAMPS = 0;
+    public static final byte WITH_TIMESTAMPS = 1;
+
+    private long clientSend; // client: ping serialized, just before it is written to the network
+    private long serverReceive; // server: ping deserialized, just after it is read from the network
+    private long serverHandlerStart; // server: ping handler started (after waiting in the Babel event queue)
+    private long serverSend; // server: pong serialized, just before it is written to the network
+    private long clientReceive; // client: pong deserialized, just after it is read from the network (never sent)
+
+    public long getClientSend() {
+        return clientSend;
+    }
+
+    public void setClientSend(long clientSend) {
+        this.clientSend = clientSend;
+    }
+
+    public long getServerReceive() {
+        return serverReceive;
+    }
+
+    public void setServerReceive(long serverReceive) {
+        this.serverReceive = serverReceive;
+    }
+
+    public long getServerHandlerStart() {
+        return serverHandlerStart;
+    }
+
+    public void setServerHandlerStart(long serverHandlerStart) {
+        this.serverHandlerStart = serverHandlerStart;
+    }
+
+    public long getServerSend() {
+        return serverSend;
+    }
+
+    public void setServerSend(long serverSend) {
+        this.serverSend = serverSend;
+    }
+
+    public long getClientReceive() {
+        return clientReceive;
+    }
+
+    public void setClientReceive(long clientReceive) {
+        this.clientReceive = clientReceive;
+    }
+}
@@ -9,32 +9,99 @@ public class PongMessage extends ProtoMessage {
     public static final short MSG_ID = 102;
 
     private final int pingId;
-    private final String message;
+    private String message; // decoded lazily from the payload, for messages received from the network
+    private final ByteBuf payload; // UTF-8 bytes of the message received from the network, or a binary payload
+    private PingTimestamps timestamps; // timestamps of the ping, echoed back with the ones of the server (null if none)
+
     public PongMessage(int pingId, String message) {
         super(MSG_ID);
         this.pingId = pingId;
         this.message = message;
+        this.payload = null;
+    }
+
+    public PongMessage(int pingId, ByteBuf payload) {
+        super(MSG_ID);
+        this.pingId = pingId;
+        this.message = null;
+        this.payload = payload;
     }
 
+    /**
+     * Creates the pong that answers a ping, carrying the same message
+     * A ping received from the network is echoed with its raw payload bytes, without decoding and encoding them again
+     * If the ping carries timestamps, so does the pong (the server send timestamp is taken when it is serialized)
+     * @param ping the ping to answer
+     * @return the pong
+     */
+    public static PongMessage echo(PingMessage ping) {
+        PongMessage pong;
+        if (ping.getPayload() != null)
+            pong = new PongMessage(ping.getPingId(), ping.getPayload());
+        else
+            pong = new PongMessage(ping.getPingId(), ping.getMessage());
+        pong.timestamps = ping.getTimestamps();
+        return pong;
+    }
 
     public int getPingId() {
         return pingId;
     }
 
     public String getMessage() {
+        if (message == null)
+            message = Utils.toUTF8String(payload);
         return message;
     }
 
+    /**
+     * @return the timestamps of the ping and of the server, or null if the message does not carry timestamps
+     */
+    public PingTimestamps getTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * @return the UTF-8 bytes of the message received from the network, or the binary payload (null otherwise)
+     */
+    public ByteBuf getPayload() {
+        return payload;
+    }
+
     public static ISerializer<? extends ProtoMessage> serializer = new ISerializer<PongMessage>() {
         public void serialize(PongMessage msg, ByteBuf out) {
             out.writeInt(msg.pingId);
-            Utils.encodeUTF8(msg.message, out);
+            if (msg.timestamps != null) {
+                out.writeByte(PingTimestamps.WITH_TIMESTAMPS);
+                msg.timestamps.setServerSend(System.nanoTime());
+                out.writeLong(msg.timestamps.getClientSend());
+                out.writeLong(msg.timestamps.getServerReceive());
+                out.writeLong(msg.timestamps.getServerHandlerStart());
+                out.writeLong(msg.timestamps.getServerSend());
+            } else {
+                out.writeByte(PingTimestamps.NO_TIMESTAMPS);
+            }
+            if (msg.payload != null)
+                Utils.writeUTF8Bytes(msg.payload, out);
+            else
+                Utils.encodeUTF8(msg.message, out);
         }
 
         public PongMessage deserialize(ByteBuf in) {
             int pingId = in.readInt();
-            String message = Utils.decodeUTF8(in);
-            return new PongMessage(pingId, message);
+            PingTimestamps timestamps = null;
+            if (in.readByte() == PingTimestamps.WITH_TIMESTAMPS) {
+                timestamps = new PingTimestamps();
+                timestamps.setClientReceive(System.nanoTime());
+                timestamps.setClientSend(in.readLong());
+                timestamps.setServerReceive(in.readLong());
+                timestamps.setServerHandlerStart(in.readLong());
+                timestamps.setServerSend(in.readLong());
+            }
+            ByteBuf payload = Utils.readUTF8Bytes(in);
+            PongMessage msg = new PongMessage(pingId, payload);
+            msg.timestamps = timestamps;
+            return msg;
         }
     };
 
@@ -0,0 +1,30 @@
+package pingpong.requests;
+
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.babel.generic.ProtoRequest;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+/**
+ * Request sent by the PingPongProtocol to itself to hand a message received by its DatagramTransport thread to the
+ * Babel thread of the protocol
+ */
+public class DatagramReceived extends ProtoRequest {
+
+    public static final short REQUEST_ID = 3;
+    private final ProtoMessage message;
+    private final Host from;
+
+    public DatagramReceived(ProtoMessage message, Host from) {
+        super(REQUEST_ID);
+        this.message = message;
+        this.from = from;
+    }
+
+    public ProtoMessage getMessage() {
+        return message;
+    }
+
+    public Host getFrom() {
+        return from;
+    }
+}
@@ -1,36 +1,107 @@
 package pingpong.requests;
 
+import io.netty.buffer.ByteBuf;
+import pingpong.BreakdownSummary;
+import pingpong.LatencySummary;
 import pt.unl.fct.di.novasys.babel.generic.ProtoRequest;
 import pt.unl.fct.di.novasys.network.data.Host;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
 public class PingRequest extends ProtoRequest {
 
     public static final short REQUEST_ID = 1;
+
+    public enum Transport { TCP, UDP }
+
     private final String message;
-    private final Host destination;
+    private final ByteBuf payload; // binary payload sent instead of the message (null to send the message)
+    private final List<Host> destinations; // each destination is probed by its own session, in parallel
     private final int nPings;
+    private final int window; // maximum number of outstanding pings (0 to send one ping per ping interval)
+    private final Transport transport; // transport used by the pings and pongs
 
     public PingRequest(String message, Host destination, int nPings) {
+        this(message, destination, nPings, 0);
+    }
+
+    public PingRequest(String message, Host destination, int nPings, int window) {
+        this(message, Collections.singletonList(destination), nPings, window);
+    }
+
+    public PingRequest(String message, List<Host> destinations, int nPings, int window) {
+        this(message, destinations, nPings, window, Transport.TCP);
+    }
+
+    public PingRequest(String message, List<Host> destinations, int nPings, int window, Transport transport) {
+        this(message, null, destinations, nPings, window, transport);
+    }
+
+    /**
+     * Creates a request that sends a pre-generated binary payload in every ping, instead of a message
+     * The payload is never modified, so the same buffer can be shared by many requests
+     */
+    public PingRequest(ByteBuf payload, List<Host> destinations, int nPings, int window) {
+        this(payload.readableBytes() + " bytes", payload, destinations, nPings, window, Transport.TCP);
+    }
+
+    private PingRequest(String message, ByteBuf payload, List<Host> destinations, int nPings, int window,
+                        Transport transport) {
         super(REQUEST_ID);
         this.message = message;
-        this.destination = destination;
+        this.payload = payload;
+        this.destinations = destinations;
         this.nPings = nPings;
-
+        this.window = window;
+        this.transport = transport;
     }
 
     public String getMessage() {
         return message;
     }
 
-    public Host getDestination() {
-        return destination;
+    /**
+     * @return the binary payload of the pings, or null if the pings carry the message
+     */
+    public ByteBuf getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return the number of bytes of payload carried by each ping
+     */
+    public int getPayloadSize() {
+        return payload != null ? payload.readableBytes() : message.getBytes(StandardCharsets.UTF_8).length;
     }
 
-    public PongReply produceReply(long rtt) {
-        return new PongReply(message, destination, rtt);
+    public List<Host> getDestinations() {
+        return destinations;
+    }
+
+    public PongReply produceReply(Host destination, LatencySummary rtt, BreakdownSummary breakdown, int lost,
+                                  long durationNanos) {
+        return new PongReply(this, destination, rtt, breakdown, lost, durationNanos);
     }
 
     public int getNPings() {
         return nPings;
     }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public boolean isDatagram() {
+        return transport == Transport.UDP;
+    }
+
+    public boolean isPipelined() {
+        return window > 0;
+    }
 }
@@ -1,31 +1,75 @@
 package pingpong.requests;
 
+import pingpong.BreakdownSummary;
+import pingpong.LatencySummary;
 import pt.unl.fct.di.novasys.babel.generic.ProtoReply;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 public class PongReply extends ProtoReply {
 
     public static final short REPLY_ID = 2;
-    private final String message;
+    private final PingRequest request;
     private final Host destination;
-    private final long rtt;
+    private final LatencySummary rtt; // summary of the RTTs of all the pongs received (in nanoseconds)
+    private final BreakdownSummary breakdown; // components of the RTTs, null if the pings carried no timestamps
+    private final int lost; // pings that expired without a pong
+    private final long durationNanos; // time between sending the first ping and receiving the last pong
 
-    public PongReply(String message, Host destination, long rtt) {
+    public PongReply(PingRequest request, Host destination, LatencySummary rtt, BreakdownSummary breakdown, int lost,
+                     long durationNanos) {
         super(REPLY_ID);
-        this.message = message;
+        this.request = request;
         this.destination = destination;
         this.rtt = rtt;
+        this.breakdown = breakdown;
+        this.lost = lost;
+        this.durationNanos = durationNanos;
     }
+
+    public PingRequest getRequest() {
+        return request;
+    }
+
     public String getMessage() {
-        return message;
+        return request.getMessage();
     }
 
     public Host getDestination() {
         return destination;
     }
 
-    public long getRTT() {
+    public LatencySummary getRTT() {
         return rtt;
     }
 
+    /**
+     * @return the components of the RTTs, or null if the pings carried no timestamps
+     */
+    public BreakdownSummary getBreakdown() {
+        return breakdown;
+    }
+
+    /**
+     * @return fraction of the pings of the session that were lost
+     */
+    public double getLossRate() {
+        long sent = rtt.getCount() + lost;
+        return sent == 0 ? 0 : (double) lost / sent;
+    }
+
+    public int getLost() {
+        return lost;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return number of pongs received per second
+     */
+    public double getThroughput() {
+        return durationNanos == 0 ? 0 : rtt.getCount() * 1_000_000_000.0 / durationNanos;
+    }
+
 }
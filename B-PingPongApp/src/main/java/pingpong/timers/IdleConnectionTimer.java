@@ -0,0 +1,18 @@
+package pingpong.timers;
+
+import pt.unl.fct.di.novasys.babel.generic.ProtoTimer;
+
+public class IdleConnectionTimer extends ProtoTimer {
+
+    public static final short TIMER_ID = 102;
+
+    public IdleConnectionTimer() {
+        super(TIMER_ID);
+    }
+
+    @Override
+    public ProtoTimer clone() {
+        return this;
+    }
+
+}
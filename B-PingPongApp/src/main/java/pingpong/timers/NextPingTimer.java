@@ -6,18 +6,15 @@ public class NextPingTimer extends ProtoTimer {
 
     public static final short TIMER_ID = 101;
 
-    private int sentPings;
-    public NextPingTimer() {
-        super(TIMER_ID);
-        sentPings = 0;
-    }
+    private final int sessionId; // ping session this timer paces
 
-    public int getSentPings() {
-        return sentPings;
+    public NextPingTimer(int sessionId) {
+        super(TIMER_ID);
+        this.sessionId = sessionId;
     }
 
-    public void incrementSentPings() {
-        sentPings++;
+    public int getSessionId() {
+        return sessionId;
     }
 
     @Override
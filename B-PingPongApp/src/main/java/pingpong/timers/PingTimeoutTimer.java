@@ -0,0 +1,18 @@
+package pingpong.timers;
+
+import pt.unl.fct.di.novasys.babel.generic.ProtoTimer;
+
+public class PingTimeoutTimer extends ProtoTimer {
+
+    public static final short TIMER_ID = 103;
+
+    public PingTimeoutTimer() {
+        super(TIMER_ID);
+    }
+
+    @Override
+    public ProtoTimer clone() {
+        return this;
+    }
+
+}
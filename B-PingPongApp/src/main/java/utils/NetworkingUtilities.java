@@ -5,7 +5,9 @@ import org.apache.logging.log4j.Logger;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 import java.net.*;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 
 public class NetworkingUtilities {
 
@@ -38,4 +40,17 @@ public class NetworkingUtilities {
         String[] addr = s.split(":");
         return new Host(InetAddress.getByName(addr[0]), Integer.parseInt(addr[1]));
     }
+
+    /**
+     * Parses a comma separated list of hosts (e.g., node-1:9000,node-2:9000)
+     * @param s the list of hosts
+     * @return the parsed hosts, in the same order
+     * @throws UnknownHostException if any of the addresses cannot be resolved
+     */
+    public static List<Host> parseHosts(String s) throws UnknownHostException {
+        List<Host> hosts = new ArrayList<>();
+        for (String host : s.split(","))
+            hosts.add(parseHost(host));
+        return hosts;
+    }
 }
@@ -1,21 +1,36 @@
 package messages;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import java.nio.charset.StandardCharsets;
 
 
 public class Utils {
+    /**
+     * Writes a string as its UTF-8 length followed by its UTF-8 bytes
+     * The string is encoded straight into the buffer, without an intermediate byte[]
+     * @param message the string to write
+     * @param out the buffer to write to
+     */
     public static void encodeUTF8(String message, ByteBuf out) {
-        byte[] stringBytes = message.getBytes(StandardCharsets.UTF_8);
-        out.writeInt(stringBytes.length);
-        out.writeBytes(stringBytes);
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0); // the length is only known after encoding
+        int length = ByteBufUtil.writeUtf8(out, message);
+        out.setInt(lengthIndex, length);
     }
 
+    /**
+     * Reads a string written by encodeUTF8
+     * The string is decoded straight from the buffer, without an intermediate byte[]
+     * @param buff the buffer to read from
+     * @return the string
+     */
     public static String decodeUTF8(ByteBuf buff) {
-        byte[] stringBytes = new byte[buff.readInt()];
-        buff.readBytes(stringBytes);
-        return new String(stringBytes, StandardCharsets.UTF_8);
+        int length = buff.readInt();
+        String message = buff.toString(buff.readerIndex(), length, StandardCharsets.UTF_8);
+        buff.skipBytes(length);
+        return message;
     }
 
 
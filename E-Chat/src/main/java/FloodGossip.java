@@ -1,8 +1,7 @@
 import messages.GossipMessage;
 import notifications.ChannelNotification;
 import notifications.DeliverNotification;
-import notifications.PeerDown;
-import notifications.PeerUp;
+import notifications.MembershipDelta;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
@@ -20,7 +19,7 @@ public class FloodGossip extends GenericProtocol {
     public static final short PROTO_ID = 201;
 
     private Host myself;
-    private final Set<Host> peers = new HashSet<>();
+    private final Map<Host, Integer> peers = new HashMap<>(); //Peers, with the connection to reach each one through
     private final Set<UUID> received;
 
     private int gossipSize;
@@ -38,8 +37,7 @@ public class FloodGossip extends GenericProtocol {
         this.gossipSize = Integer.parseInt(props.getProperty("gossip_size", "2"));
 
         /*--------------------- Register Notification Handlers ------------------------ */
-        subscribeNotification(PeerUp.NOTIFICATION_ID, this::uponPeerUp);
-        subscribeNotification(PeerDown.NOTIFICATION_ID, this::uponPeerDown);
+        subscribeNotification(MembershipDelta.NOTIFICATION_ID, this::uponMembershipDelta);
         subscribeNotification(ChannelNotification.NOTIFICATION_ID, this::onChannelNotification);
         /*--------------------- Register Request Handlers ----------------------------- */
         registerRequestHandler(BroadcastRequest.REQUEST_ID, this::uponBroadcast);
@@ -80,12 +78,12 @@ public class FloodGossip extends GenericProtocol {
         if (received.add(msg.getMid())) {
             triggerNotification(new DeliverNotification(msg.getContent(), from, msg.getRound()));
             msg.setRound(msg.getRound() + 1);
-            List<Host> randomPeers = new LinkedList<>(peers);
+            List<Host> randomPeers = new LinkedList<>(peers.keySet());
             randomPeers.remove(from);
             Collections.shuffle(randomPeers);
             randomPeers.subList(0, Math.min(gossipSize, randomPeers.size())).forEach(host -> {
                 if (!host.equals(from)) {
-                    sendMessage(channelId, msg, host);
+                    sendMessage(channelId, msg, host, peers.get(host));
                     logger.trace("Sent {} to {}", msg, host);
                 }
             });
@@ -93,16 +91,13 @@ public class FloodGossip extends GenericProtocol {
     }
 
     /*--------------------------------- Notifications ---------------------------------------- */
-    //When receiving a PeerUp notification, we add the peer to our list of peers
-    private void uponPeerUp(PeerUp not, short sourceProto) {
-        peers.add(not.getPeer());
-        logger.info("New peer {}, curr view({}): {}", not.getPeer(), peers.size(), peers);
-    }
-
-    //When receiving a PeerDown notification, we remove the peer from our list of peers
-    private void uponPeerDown(PeerDown not, short sourceProto) {
-        peers.remove(not.getPeer());
-        logger.info("Bad peer {}, curr view({}): {}", not.getPeer(), peers.size(), peers);
+    //When receiving a MembershipDelta notification, we apply the whole batch of changes to our list of peers
+    private void uponMembershipDelta(MembershipDelta not, short sourceProto) {
+        peers.putAll(not.getAdded());
+        peers.keySet().removeAll(not.getRemoved());
+        logger.info("New peers {}, bad peers {}, curr view size {}", not.getAdded().keySet(), not.getRemoved(),
+                peers.size());
+        logger.debug("Curr view: {}", peers.keySet());
     }
 
 }
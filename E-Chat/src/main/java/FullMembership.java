@@ -1,6 +1,9 @@
+import messages.HeartbeatMessage;
+import messages.HeartbeatReplyMessage;
 import messages.ShuffleMessage;
 import messages.ShuffleReplyMessage;
 import notifications.ChannelNotification;
+import notifications.MembershipDelta;
 import notifications.PeerDown;
 import notifications.PeerUp;
 import org.apache.logging.log4j.LogManager;
@@ -11,8 +14,17 @@ import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
 import pt.unl.fct.di.novasys.channel.tcp.TCPChannel;
 import pt.unl.fct.di.novasys.channel.tcp.events.*;
 import pt.unl.fct.di.novasys.network.data.Host;
+import timers.ConnectTimer;
+import timers.HeartbeatTimer;
+import timers.MembershipDeltaTimer;
 import timers.ShuffleTimer;
+import timers.SnapshotTimer;
+import utils.ConnectionQueue;
+import utils.FailedHosts;
+import utils.IndexedHostSet;
+import utils.MembershipSnapshot;
 import utils.NetworkingUtilities;
+import utils.PhiAccrualDetector;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -29,10 +41,32 @@ public class FullMembership extends GenericProtocol {
     public final static String PROTOCOL_NAME = "FullMembership";
 
     private Host self;     //My own address/port
-    private final Set<Host> membership; //Peers I am connected to
+    private final IndexedHostSet membership; //Peers I am connected to (with O(1) random picks)
+    private final Map<Host, Integer> connections; //Connection to reach each peer of the membership through (out or in)
     private final Set<Host> pending; //Peers I am trying to connect to
+    private final Set<Host> cancelled; //Peers whose connection attempt we cancelled, as they connected to us first
+    private final ConnectionQueue toConnect; //Peers waiting for a connection attempt, by priority
+    private int connectTimers; //ConnectTimers set, each one reserving one of the maxPending attempts
+    private FailedHosts failed; //Peers we recently failed to connect to, not contacted nor advertised for a while
+    private PhiAccrualDetector detector; //Suspicion level of each peer, from the replies to our heartbeats
+    private double phiThreshold; //param: suspicion level above which a peer is considered failed
+    private long nextHeartbeat; //Sequence number of the next heartbeat
+    private MembershipSnapshot snapshot; //File where the membership is saved, null if not enabled
+    private boolean membershipChanged; //Whether the membership changed since the last snapshot
+    private int minShuffleInterval; //param: shuffle interval while samples bring new peers (ms)
+    private int maxShuffleInterval; //param: maximum shuffle interval, once the membership is stable (ms)
+    private int shuffleInterval; //Current interval until the next shuffle (ms)
+    private long shuffleTimerId; //Id of the timer of the next shuffle
+    private int sampledHosts; //Peers received in samples since the last shuffle
+    private int novelHosts; //Peers received in samples since the last shuffle that we did not know about
+    private int deltaWindow; //param: time during which membership changes are batched in a MembershipDelta (ms)
+    private Map<Host, Integer> deltaAdded; //Peers added (or whose connection changed) since the last MembershipDelta
+    private Set<Host> deltaRemoved; //Peers removed since the last MembershipDelta
 
     private int subsetSize; //param: maximum size of sample;
+    private int maxPending; //param: maximum number of simultaneous connection attempts
+    private int connectJitter; //param: maximum random delay before each connection attempt (ms)
+    private boolean singleConnection; //param: whether to keep a single connection (in either direction) per peer
 
     private final Random rnd;
     protected int channelId;
@@ -40,8 +74,11 @@ public class FullMembership extends GenericProtocol {
     public FullMembership() {
         super(PROTOCOL_NAME, PROTOCOL_ID);
 
-        this.membership = new HashSet<>();
+        this.membership = new IndexedHostSet();
+        this.connections = new HashMap<>();
         this.pending = new HashSet<>();
+        this.cancelled = new HashSet<>();
+        this.toConnect = new ConnectionQueue();
 
         this.rnd = new Random();
     }
@@ -49,7 +86,24 @@ public class FullMembership extends GenericProtocol {
     @Override
     public void init(Properties properties) throws IOException, HandlerRegistrationException {
         this.subsetSize = Integer.parseInt(properties.getProperty("sample_size", "2"));
-        int shuffleTimer = Integer.parseInt(properties.getProperty("shuffle_time", "5000"));
+        this.minShuffleInterval = Integer.parseInt(properties.getProperty("shuffle_time", "5000"));
+        this.maxShuffleInterval = Math.max(minShuffleInterval,
+                Integer.parseInt(properties.getProperty("shuffle_time_max", "60000")));
+        this.shuffleInterval = minShuffleInterval;
+        this.maxPending = Integer.parseInt(properties.getProperty("max_pending_connections", "8"));
+        this.connectJitter = Integer.parseInt(properties.getProperty("connect_jitter", "50"));
+        this.deltaWindow = Integer.parseInt(properties.getProperty("delta_window", "100"));
+        this.singleConnection = Boolean.parseBoolean(properties.getProperty("single_connection", "false"));
+        this.deltaAdded = new HashMap<>();
+        this.deltaRemoved = new HashSet<>();
+        int heartbeatInterval = Integer.parseInt(properties.getProperty("heartbeat_interval", "1000"));
+        this.phiThreshold = Double.parseDouble(properties.getProperty("phi_threshold", "8"));
+        this.detector = new PhiAccrualDetector(Integer.parseInt(properties.getProperty("phi_window", "100")),
+                heartbeatInterval, Double.parseDouble(properties.getProperty("phi_min_stddev", "200")),
+                Double.parseDouble(properties.getProperty("phi_acceptable_pause", 3 * heartbeatInterval + "")));
+        this.failed = new FailedHosts(Long.parseLong(properties.getProperty("failure_backoff", "1000")),
+                Long.parseLong(properties.getProperty("failure_backoff_max", "60000")),
+                Long.parseLong(properties.getProperty("failure_ttl", "300000")));
 
         Properties channelProps = new Properties();
 
@@ -80,13 +134,21 @@ public class FullMembership extends GenericProtocol {
         /*---------------------- Register Message Serializers ---------------------- */
         registerMessageSerializer(channelId, ShuffleMessage.MSG_ID, ShuffleMessage.serializer);
         registerMessageSerializer(channelId, ShuffleReplyMessage.MSG_ID, ShuffleReplyMessage.serializer);
+        registerMessageSerializer(channelId, HeartbeatMessage.MSG_ID, HeartbeatMessage.serializer);
+        registerMessageSerializer(channelId, HeartbeatReplyMessage.MSG_ID, HeartbeatReplyMessage.serializer);
 
         /*---------------------- Register Message Handlers -------------------------- */
         registerMessageHandler(channelId, ShuffleMessage.MSG_ID, this::uponShuffle, this::uponMsgFail);
         registerMessageHandler(channelId, ShuffleReplyMessage.MSG_ID, this::uponShuffleReply, this::uponMsgFail);
+        registerMessageHandler(channelId, HeartbeatMessage.MSG_ID, this::uponHeartbeat, this::uponMsgFail);
+        registerMessageHandler(channelId, HeartbeatReplyMessage.MSG_ID, this::uponHeartbeatReply, this::uponMsgFail);
 
         /*--------------------- Register Timer Handlers ----------------------------- */
         registerTimerHandler(ShuffleTimer.TIMER_ID, this::uponShuffleTimer);
+        registerTimerHandler(ConnectTimer.TIMER_ID, this::uponConnectTimer);
+        registerTimerHandler(HeartbeatTimer.TIMER_ID, this::uponHeartbeatTimer);
+        registerTimerHandler(MembershipDeltaTimer.TIMER_ID, this::uponMembershipDeltaTimer);
+        registerTimerHandler(SnapshotTimer.TIMER_ID, this::uponSnapshotTimer);
 
         /*-------------------- Register Channel Events ------------------------------- */
         registerChannelEventHandler(channelId, OutConnectionDown.EVENT_ID, this::uponOutConnectionDown);
@@ -95,6 +157,20 @@ public class FullMembership extends GenericProtocol {
         registerChannelEventHandler(channelId, InConnectionUp.EVENT_ID, this::uponInConnectionUp);
         registerChannelEventHandler(channelId, InConnectionDown.EVENT_ID, this::uponInConnectionDown);
 
+        // If we define a snapshot file, we reconnect to the peers saved in it (by a previous run), so that a restarted
+        // node does not rebuild its view one shuffle at a time. They are queued after the contact node: a stale
+        // snapshot full of dead peers only takes its share of the connection attempts, and they enter the failure
+        // backoff as any other peer
+        if (properties.containsKey("snapshot_file")) {
+            snapshot = new MembershipSnapshot(properties.getProperty("snapshot_file"));
+            List<Host> saved = snapshot.load();
+            logger.info("Reconnecting to {} peers from the membership snapshot", saved.size());
+            for (Host h : saved)
+                scheduleConnection(h, ConnectionQueue.PRIORITY_SNAPSHOT);
+            int snapshotInterval = Integer.parseInt(properties.getProperty("snapshot_interval", "5000"));
+            setupPeriodicTimer(new SnapshotTimer(), snapshotInterval, snapshotInterval);
+        }
+
         // If we define a contact node, we start by connecting to it
         // (and eventually exchanging membership through shuffle messages)
         if (properties.containsKey("contact")) {
@@ -102,8 +178,7 @@ public class FullMembership extends GenericProtocol {
                 String contact = properties.getProperty("contact");
                 String[] hostElems = contact.split(":");
                 Host contactHost = new Host(InetAddress.getByName(hostElems[0]), Short.parseShort(hostElems[1]));
-                pending.add(contactHost);
-                openConnection(contactHost);
+                scheduleConnection(contactHost, ConnectionQueue.PRIORITY_CONTACT);
             } catch (Exception e) {
                 logger.error("Invalid contact on configuration: '" + properties.getProperty("contact"));
                 e.printStackTrace();
@@ -111,15 +186,17 @@ public class FullMembership extends GenericProtocol {
             }
         }
 
-        // Set up a periodic timer to send shuffle messages
-        setupPeriodicTimer(new ShuffleTimer(), shuffleTimer, shuffleTimer);
+        // Set up a timer to send the first shuffle message (each shuffle sets up the timer for the next one)
+        shuffleTimerId = setupTimer(new ShuffleTimer(), shuffleInterval);
+        // Set up a periodic timer to send heartbeats and check the suspicion level of the peers
+        setupPeriodicTimer(new HeartbeatTimer(), heartbeatInterval, heartbeatInterval);
 
         triggerNotification(new ChannelNotification(self, channelId));
     }
 
     /*--------------------------------- Timers ---------------------------------------- */
     // When the shuffle timer is triggered, we grab a subset of the membership (including ourselves) and send it to a
-    // random connected peer
+    // random connected peer, and set up the timer for the next shuffle
     private void uponShuffleTimer(ShuffleTimer timer, long timerId) {
 
         StringBuilder sb = new StringBuilder();
@@ -129,66 +206,203 @@ public class FullMembership extends GenericProtocol {
 
         logger.debug("Shuffle: " + sb);
 
+        failed.purge(System.currentTimeMillis());
+
         if (membership.size() > 0) {
-            Host target = getRandom(membership);
-            Set<Host> subset = getRandomSubsetExcluding(membership, subsetSize, target);
-            subset.add(self);
+            Host target = membership.getRandom(rnd);
+            Set<Host> subset = sample(target);
             ShuffleMessage msg = new ShuffleMessage(subset);
-            sendMessage(channelId, msg, target);
+            sendMessage(channelId, msg, target, connections.get(target));
             logger.debug("Sent {} to {}", msg, target);
         }
+
+        updateShuffleInterval();
+        shuffleTimerId = setupTimer(new ShuffleTimer(), shuffleInterval);
+    }
+
+    // While samples keep bringing peers we did not know about, the membership is still converging, so we shuffle at the
+    // minimum interval. Once a whole interval goes by without new peers, we double the interval (up to the maximum), so
+    // a stable membership does not keep exchanging samples it already knows. Changes of the interval are logged at info
+    // level, with the novelty rate that caused them
+    private void updateShuffleInterval() {
+        double noveltyRate = sampledHosts == 0 ? 0 : (double) novelHosts / sampledHosts;
+        int previous = shuffleInterval;
+        if (novelHosts > 0 || membership.isEmpty())
+            shuffleInterval = minShuffleInterval;
+        else
+            shuffleInterval = (int) Math.min((long) shuffleInterval * 2, maxShuffleInterval);
+        if (shuffleInterval != previous)
+            logger.info("Shuffle interval changed from {} to {} ms (novelty rate {} of {} sampled peers)", previous,
+                    shuffleInterval, String.format("%.2f", noveltyRate), sampledHosts);
+        else
+            logger.debug("Shuffle interval: {} ms (novelty rate {} of {} sampled peers)", shuffleInterval,
+                    String.format("%.2f", noveltyRate), sampledHosts);
+        sampledHosts = 0;
+        novelHosts = 0;
+    }
+
+    // When we lose a peer (by failure or suspicion), the membership is changing again, so we go back to the minimum
+    // interval, rescheduling the next shuffle
+    private void resetShuffleInterval() {
+        if (shuffleInterval == minShuffleInterval)
+            return;
+        logger.info("Shuffle interval changed from {} to {} ms (peer lost)", shuffleInterval, minShuffleInterval);
+        shuffleInterval = minShuffleInterval;
+        cancelTimer(shuffleTimerId);
+        shuffleTimerId = setupTimer(new ShuffleTimer(), shuffleInterval);
+    }
+
+    // When the snapshot timer is triggered, we save the membership to the snapshot file (if it changed since last time)
+    private void uponSnapshotTimer(SnapshotTimer timer, long timerId) {
+        if (!membershipChanged)
+            return;
+        try {
+            snapshot.save(membership);
+            membershipChanged = false;
+        } catch (IOException e) {
+            logger.error("Failed to save the membership snapshot", e);
+        }
+    }
+
+    // When a connect timer is triggered, we start the connection attempt to the queued peer with the highest priority
+    // (using the attempt reserved by the timer), and set more timers if there are more peers waiting and free attempts
+    private void uponConnectTimer(ConnectTimer timer, long timerId) {
+        connectTimers--;
+        long now = System.currentTimeMillis();
+        Host h;
+        // the peers may have connected or failed (through another connection attempt) since they were queued
+        while ((h = toConnect.poll()) != null) {
+            if (!membership.contains(h) && !pending.contains(h) && !failed.isBlocked(h, now)) {
+                pending.add(h);
+                cancelled.remove(h); // the events of the new attempt are not ignored
+                openConnection(h);
+                break;
+            }
+        }
+        setupConnectTimer();
+    }
+
+    // When the heartbeat timer is triggered, we send a heartbeat to every peer, through the same connection used to
+    // send it messages, and remove the peers whose suspicion level is above the threshold, without waiting for their
+    // connection to go down (which may take long for a stalled peer or a half-open connection)
+    private void uponHeartbeatTimer(HeartbeatTimer timer, long timerId) {
+        long now = System.currentTimeMillis();
+        HeartbeatMessage heartbeat = new HeartbeatMessage(nextHeartbeat++);
+        List<Host> suspected = new ArrayList<>();
+        for (Host h : membership) {
+            double phi = detector.phi(h, now);
+            logger.trace("Suspicion level of {}: {}", h, phi);
+            if (phi > phiThreshold)
+                suspected.add(h);
+            else
+                sendMessage(channelId, heartbeat, h, connections.get(h));
+        }
+        for (Host h : suspected) {
+            logger.info("Suspecting {} (phi={}), removing it from membership", h, String.format("%.2f", detector.phi(h, now)));
+            failed.recordFailure(h, now);
+            int connection = connections.get(h);
+            removePeer(h);
+            closeConnection(h, channelId, connection);
+        }
+    }
+
+    // When the membership delta timer is triggered, we notify the changes to the membership since the last delta
+    private void uponMembershipDeltaTimer(MembershipDeltaTimer timer, long timerId) {
+        if (!deltaAdded.isEmpty() || !deltaRemoved.isEmpty()) // else it was triggered early (see setConnection)
+            triggerMembershipDelta();
+    }
+
+    private void triggerMembershipDelta() {
+        logger.debug("Membership delta: {} added, {} removed", deltaAdded.size(), deltaRemoved.size());
+        triggerNotification(new MembershipDelta(deltaAdded, deltaRemoved));
+        deltaAdded = new HashMap<>();
+        deltaRemoved = new HashSet<>();
     }
 
     /*--------------------------------- Messages ---------------------------------------- */
+    //Heartbeats are answered through the connection they arrived on
+    private void uponHeartbeat(HeartbeatMessage msg, Host from, short sourceProto, int channelId) {
+        sendMessage(channelId, new HeartbeatReplyMessage(msg.getSeq()), from, replyConnection(from));
+    }
+
+    // The connection a message from a peer arrived on: the peer's connection to us, unless we keep a single connection
+    // per peer, in which case it is the one we use to reach the peer
+    private int replyConnection(Host from) {
+        Integer connection = singleConnection ? connections.get(from) : null;
+        return connection != null ? connection : TCPChannel.CONNECTION_IN;
+    }
+
+    private void uponHeartbeatReply(HeartbeatReplyMessage msg, Host from, short sourceProto, int channelId) {
+        detector.heartbeat(from, System.currentTimeMillis());
+    }
+
+    // A random subset of the membership (plus ourselves) to send to a peer. Peers in the failure backoff are left out,
+    // even if they are still in the membership (e.g., reached through their connection to us), so that we do not
+    // advertise peers we consider failed
+    private Set<Host> sample(Host exclude) {
+        long now = System.currentTimeMillis();
+        Set<Host> subset = membership.getRandomSubsetExcluding(subsetSize, exclude, rnd);
+        subset.removeIf(h -> failed.isBlocked(h, now));
+        subset.add(self);
+        return subset;
+    }
+
     //When receiving a shuffle message, we reply with a subset of our membership.
-    // Additionally, we try to connect to the peers in the sample that we are not connected to yet, adding them to the
-    // pending set
+    // Additionally, we schedule connections to the peers in the sample that we are not connected to yet
     private void uponShuffle(ShuffleMessage msg, Host from, short sourceProto, int channelId) {
         logger.debug("Received {} from {}", msg, from);
 
-        Set<Host> subset = getRandomSubsetExcluding(membership, subsetSize, from);
-        subset.add(self);
+        Set<Host> subset = sample(from);
         ShuffleReplyMessage reply = new ShuffleReplyMessage(subset);
-        sendMessage(channelId, reply, from, TCPChannel.CONNECTION_IN);
+        sendMessage(channelId, reply, from, replyConnection(from));
         logger.debug("Sent {} to {}", reply, from);
-        for (Host h : msg.getSample()) {
-            if (!h.equals(self) && !membership.contains(h) && !pending.contains(h)) {
-                pending.add(h);
-                openConnection(h);
-            }
-        }
+        scheduleConnections(msg.getSample(), from);
     }
 
-    // Upon receiving a shuffle reply, we try to connect to the peers in the sample that we are not connected to yet,
-    // adding them to the pending set
+    // Upon receiving a shuffle reply, we schedule connections to the peers in the sample that we are not connected to
+    // yet
     private void uponShuffleReply(ShuffleReplyMessage msg, Host from, short sourceProto, int channelId) {
         logger.debug("Received {} from {}", msg, from);
-        for (Host h : msg.getSample()) {
-            if (!h.equals(self) && !membership.contains(h) && !pending.contains(h)) {
-                pending.add(h);
-                openConnection(h);
+        scheduleConnections(msg.getSample(), from);
+    }
+
+    /*--------------------------------- Connection attempts ---------------------------------------- */
+    // Connection attempts are not started right away: peers are queued by priority and at most maxPending attempts run
+    // at the same time, each one started after its own random delay (up to connectJitter), so that many nodes joining
+    // at once do not flood each other with connection attempts
+
+    // Queues the peers of a sample we are not connected to yet. The sender of the sample (which includes itself) is
+    // known to be alive, so it goes before the other peers. Peers that recently failed are dropped: as samples only
+    // include connected peers, they are not advertised again either, so dead addresses stop spreading
+    private void scheduleConnections(Set<Host> sample, Host from) {
+        long now = System.currentTimeMillis();
+        for (Host h : sample) {
+            sampledHosts++;
+            if (!h.equals(self) && !membership.contains(h) && !pending.contains(h) && !toConnect.contains(h)
+                    && (h.equals(from) || !failed.isBlocked(h, now)))
+                novelHosts++; // a peer we will try to connect to
+            if (h.equals(from)) {
+                failed.recordSuccess(h); // it just reached us, so it is alive
+                scheduleConnection(h, ConnectionQueue.PRIORITY_SENDER);
             }
+            else if (!failed.isBlocked(h, now))
+                scheduleConnection(h, ConnectionQueue.PRIORITY_SAMPLE);
         }
     }
 
-    // Auxiliary function to get a random element from the membership set
-    private Host getRandom(Set<Host> hostSet) {
-        int idx = rnd.nextInt(hostSet.size());
-        int i = 0;
-        for (Host h : hostSet) {
-            if (i == idx)
-                return h;
-            i++;
+    private void scheduleConnection(Host h, int priority) {
+        if (!h.equals(self) && !membership.contains(h) && !pending.contains(h)) {
+            toConnect.add(h, priority);
+            setupConnectTimer();
         }
-        return null;
     }
 
-    // Auxiliary function to get a random subset of the membership set, excluding a given host
-    private static Set<Host> getRandomSubsetExcluding(Set<Host> hostSet, int sampleSize, Host exclude) {
-        List<Host> list = new LinkedList<>(hostSet);
-        list.remove(exclude);
-        Collections.shuffle(list);
-        return new HashSet<>(list.subList(0, Math.min(sampleSize, list.size())));
+    // Sets a connect timer for each free attempt, up to the number of queued peers
+    private void setupConnectTimer() {
+        while (connectTimers < toConnect.size() && pending.size() + connectTimers < maxPending) {
+            connectTimers++;
+            setupTimer(new ConnectTimer(), connectJitter > 0 ? rnd.nextInt(connectJitter + 1) : 0);
+        }
     }
 
     /* --------------------------------- TCPChannel Events ---------------------------- */
@@ -197,35 +411,144 @@ public class FullMembership extends GenericProtocol {
     private void uponOutConnectionUp(OutConnectionUp event, int channelId) {
         Host peer = event.getNode();
         logger.debug("Connection to {} is up", peer);
+        if (cancelled.contains(peer)) { // we reach the peer through its connection, close ours (see uponInConnectionUp)
+            closeConnection(peer);
+            return;
+        }
         pending.remove(peer);
-        if (membership.add(peer)) {
-            logger.debug("Added {} to membership", peer);
-            triggerNotification(new PeerUp(peer));
+        failed.recordSuccess(peer);
+        setupConnectTimer();
+        if (!membership.contains(peer))
+            addPeer(peer, TCPChannel.CONNECTION_OUT);
+        else if (connections.get(peer) == TCPChannel.CONNECTION_IN) { // (single connection) it connected to us first
+            if (opensConnection(peer)) // but our connection wins
+                setConnection(peer, TCPChannel.CONNECTION_OUT);
+            else
+                closeConnection(peer);
         }
     }
 
-    //When a connection to a peer goes down, we remove it from the membership
+    //When a connection to a peer goes down, we remove it from the membership and block it for a while
     private void uponOutConnectionDown(OutConnectionDown event, int channelId) {
         Host peer = event.getNode();
         logger.debug("Connection to {} is down cause {}", peer, event.getCause());
-        membership.remove(event.getNode());
-        logger.debug("Removed {} from membership", peer);
-        triggerNotification(new PeerDown(event.getNode()));
+        if (cancelled.remove(peer))
+            return;
+        // (if not, the failure detector removed it already, or we reach it through its connection to us)
+        if (connections.getOrDefault(peer, TCPChannel.CONNECTION_IN) == TCPChannel.CONNECTION_OUT) {
+            failed.recordFailure(peer, System.currentTimeMillis());
+            removePeer(peer);
+        }
+    }
 
+    private void addPeer(Host peer, int connection) {
+        membership.add(peer);
+        connections.put(peer, connection);
+        detector.monitor(peer, System.currentTimeMillis());
+        membershipChanged = true;
+        logger.debug("Added {} to membership", peer);
+        triggerNotification(new PeerUp(peer, connection));
+        addToDelta(peer, true);
     }
 
-    //When a connection to a peer fails, we remove it from the pending set
+    // Changes the connection we reach a peer through, notifying it as if the peer was added again. The delta is
+    // triggered right away, without waiting for the window, as the other connection is about to be closed (by us or by
+    // the peer) and the protocols above us must stop using it
+    private void setConnection(Host peer, int connection) {
+        if (connections.put(peer, connection) == connection)
+            return;
+        logger.debug("Reaching {} through the {} connection", peer, connection == TCPChannel.CONNECTION_IN ? "in" : "out");
+        triggerNotification(new PeerUp(peer, connection));
+        addToDelta(peer, true);
+        if (deltaWindow > 0)
+            triggerMembershipDelta();
+    }
+
+    private void removePeer(Host peer) {
+        if (membership.remove(peer)) {
+            connections.remove(peer);
+            detector.remove(peer);
+            membershipChanged = true;
+            logger.debug("Removed {} from membership", peer);
+            triggerNotification(new PeerDown(peer));
+            resetShuffleInterval();
+            addToDelta(peer, false);
+        }
+    }
+
+    // Membership changes are notified one at a time (PeerUp and PeerDown) and in batches (MembershipDelta), so that
+    // protocols that only need the whole view (like FloodGossip) handle a mass join or failure at once. A delta is
+    // triggered deltaWindow ms after the first change it includes, or right away if deltaWindow is 0
+    private void addToDelta(Host peer, boolean added) {
+        boolean first = deltaAdded.isEmpty() && deltaRemoved.isEmpty();
+        if (added) {
+            deltaRemoved.remove(peer); // a peer removed and added again in the same window did not change
+            deltaAdded.put(peer, connections.get(peer));
+        } else {
+            deltaAdded.remove(peer);
+            deltaRemoved.add(peer);
+        }
+        if (deltaWindow == 0)
+            triggerMembershipDelta();
+        else if (first)
+            setupTimer(new MembershipDeltaTimer(), deltaWindow);
+    }
+
+    //When a connection to a peer fails, we remove it from the pending set and block it, for longer after each failure
     private void uponOutConnectionFailed(OutConnectionFailed<ProtoMessage> event, int channelId) {
-        logger.debug("Connection to {} failed cause: {}", event.getNode(), event.getCause());
+        if (cancelled.remove(event.getNode())) // the peer is reached through its connection, it did not fail
+            return;
+        long backoff = failed.recordFailure(event.getNode(), System.currentTimeMillis());
+        logger.debug("Connection to {} failed cause: {}, blocked for {} ms", event.getNode(), event.getCause(), backoff);
         pending.remove(event.getNode());
+        setupConnectTimer();
     }
 
+    //If we keep a single connection per peer, a peer that connects to us is added to the membership, reached through
+    // its connection. When both peers connect to each other at the same time, both keep the connection opened by the
+    // peer with the lowest address and close the other one
     private void uponInConnectionUp(InConnectionUp event, int channelId) {
-        logger.trace("Connection from {} is up", event.getNode());
+        Host peer = event.getNode();
+        logger.trace("Connection from {} is up", peer);
+        if (!singleConnection)
+            return;
+        if (!membership.contains(peer)) {
+            if (pending.contains(peer) && !opensConnection(peer)) { // its connection wins, cancel ours
+                pending.remove(peer);
+                cancelled.add(peer); // the attempt may still come up, go down or fail, which we ignore
+                closeConnection(peer);
+                setupConnectTimer();
+            }
+            failed.recordSuccess(peer);
+            addPeer(peer, TCPChannel.CONNECTION_IN);
+        } else if (connections.get(peer) == TCPChannel.CONNECTION_OUT && !opensConnection(peer)) {
+            // we connected to it first, but its connection wins
+            setConnection(peer, TCPChannel.CONNECTION_IN);
+            closeConnection(peer);
+        }
     }
 
+    //If we reach a peer through its connection, we remove it from the membership when the connection goes down
     private void uponInConnectionDown(InConnectionDown event, int channelId) {
-        logger.trace("Connection from {} is down, cause: {}", event.getNode(), event.getCause());
+        Host peer = event.getNode();
+        logger.trace("Connection from {} is down, cause: {}", peer, event.getCause());
+        if (connections.getOrDefault(peer, TCPChannel.CONNECTION_OUT) == TCPChannel.CONNECTION_IN) {
+            failed.recordFailure(peer, System.currentTimeMillis());
+            removePeer(peer);
+        }
+    }
+
+    // Whether our connection to a peer wins over its connection to us (the peer with the lowest address wins)
+    private boolean opensConnection(Host peer) {
+        byte[] mine = self.getAddress().getAddress();
+        byte[] theirs = peer.getAddress().getAddress();
+        if (mine.length != theirs.length)
+            return mine.length < theirs.length;
+        for (int i = 0; i < mine.length; i++) {
+            if (mine[i] != theirs[i])
+                return (mine[i] & 0xFF) < (theirs[i] & 0xFF);
+        }
+        return self.getPort() < peer.getPort();
     }
 
     private void uponMsgFail(ProtoMessage msg, Host host, short destProto, Throwable throwable, int channelId) {
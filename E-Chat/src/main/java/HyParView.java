@@ -0,0 +1,446 @@
+import messages.*;
+import notifications.ChannelNotification;
+import notifications.MembershipDelta;
+import notifications.PeerDown;
+import notifications.PeerUp;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
+import pt.unl.fct.di.novasys.babel.exceptions.HandlerRegistrationException;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.channel.tcp.TCPChannel;
+import pt.unl.fct.di.novasys.channel.tcp.events.*;
+import pt.unl.fct.di.novasys.network.data.Host;
+import timers.NeighborTimer;
+import timers.ShuffleTimer;
+import utils.IndexedHostSet;
+import utils.NetworkingUtilities;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.*;
+
+/**
+ * Partial view membership protocol, based on HyParView (Leitao et al., DSN 2007)
+ * Each node keeps a small active view of peers it is connected to (the only ones announced with PeerUp), and a larger
+ * passive view of peers it knows about but is not connected to, used to replace the active peers that fail.
+ * The number of connections of each node is bounded by the size of the active view, regardless of the size of the
+ * system, instead of growing with it as in FullMembership.
+ * Emits the same notifications as FullMembership, so the protocols above it can use either one.
+ * Simplification: the shuffle is a direct exchange with a random active peer, instead of the random walk (with a TTL
+ * over the active views) of the original protocol, after which the last node of the walk replies to the origin through
+ * a temporary connection. Passive views are still refreshed, but a shuffle only reaches the neighbors of each node.
+ */
+public class HyParView extends GenericProtocol {
+
+    private static final Logger logger = LogManager.getLogger(HyParView.class);
+
+    public static final int DEFAULT_PORT = 8000; // default port to listen on
+
+    //Protocol information, to register in babel
+    public final static short PROTOCOL_ID = 103;
+    public final static String PROTOCOL_NAME = "HyParView";
+
+    private Host self;     //My own address/port
+    private final IndexedHostSet active; //Peers in the active view (connections opened, or being opened, by us)
+    private final Set<Host> connected; //Peers of the active view whose connection is up (announced with PeerUp)
+    private final IndexedHostSet passive; //Peers in the passive view (known, but not connected)
+    private final Map<Host, Long> pendingNeighbors; //Passive peers we asked to join our active view (to their timeout)
+
+    private int activeViewSize; //param: maximum size of the active view
+    private int passiveViewSize; //param: maximum size of the passive view
+    private int activeRandomWalkLength; //param: hops of a ForwardJoin until the new node is added to the active view
+    private int passiveRandomWalkLength; //param: hops of a ForwardJoin until the new node is added to the passive view
+    private int subsetSize; //param: number of active and passive peers sent in a shuffle
+    private int neighborTimeout; //param: time to wait for the reply to a neighbor request
+
+    private final Random rnd;
+    protected int channelId;
+
+    public HyParView() {
+        super(PROTOCOL_NAME, PROTOCOL_ID);
+
+        this.active = new IndexedHostSet();
+        this.connected = new HashSet<>();
+        this.passive = new IndexedHostSet();
+        this.pendingNeighbors = new HashMap<>();
+
+        this.rnd = new Random();
+    }
+
+    @Override
+    public void init(Properties properties) throws IOException, HandlerRegistrationException {
+        this.activeViewSize = Integer.parseInt(properties.getProperty("active_view", "4"));
+        this.passiveViewSize = Integer.parseInt(properties.getProperty("passive_view", "30"));
+        this.activeRandomWalkLength = Integer.parseInt(properties.getProperty("arwl", "6"));
+        this.passiveRandomWalkLength = Integer.parseInt(properties.getProperty("prwl", "3"));
+        this.subsetSize = Integer.parseInt(properties.getProperty("sample_size", "2"));
+        this.neighborTimeout = Integer.parseInt(properties.getProperty("neighbor_timeout", "5000"));
+        int shuffleTimer = Integer.parseInt(properties.getProperty("shuffle_time", "5000"));
+
+        Properties channelProps = new Properties();
+
+
+        if (properties.containsKey("interface"))
+            //if defined interface, get interface address
+            channelProps.setProperty(TCPChannel.ADDRESS_KEY, NetworkingUtilities.getAddress(properties.getProperty("interface")));
+        else if (properties.containsKey("address"))
+            // else use defined interface
+            channelProps.setProperty(TCPChannel.ADDRESS_KEY, properties.getProperty("address"));
+        else {
+            channelProps.setProperty(TCPChannel.ADDRESS_KEY, NetworkingUtilities.getAddress("eth0"));
+        }
+
+        // set network port to listen on
+        if (properties.containsKey("port")) {
+            // if port is defined, used defined port
+            channelProps.setProperty(TCPChannel.PORT_KEY, properties.getProperty("port"));
+        } else
+            // else use default value
+            channelProps.setProperty(TCPChannel.PORT_KEY, DEFAULT_PORT + "");
+
+        self = new Host(InetAddress.getByName(channelProps.getProperty(TCPChannel.ADDRESS_KEY)),
+                Short.parseShort(channelProps.getProperty(TCPChannel.PORT_KEY)));
+        logger.info("I am {}", self);
+        this.channelId = createChannel(TCPChannel.NAME, channelProps);
+
+        /*---------------------- Register Message Serializers ---------------------- */
+        registerMessageSerializer(channelId, JoinMessage.MSG_ID, JoinMessage.serializer);
+        registerMessageSerializer(channelId, ForwardJoinMessage.MSG_ID, ForwardJoinMessage.serializer);
+        registerMessageSerializer(channelId, NeighborMessage.MSG_ID, NeighborMessage.serializer);
+        registerMessageSerializer(channelId, NeighborReplyMessage.MSG_ID, NeighborReplyMessage.serializer);
+        registerMessageSerializer(channelId, DisconnectMessage.MSG_ID, DisconnectMessage.serializer);
+        registerMessageSerializer(channelId, ShuffleMessage.MSG_ID, ShuffleMessage.serializer);
+        registerMessageSerializer(channelId, ShuffleReplyMessage.MSG_ID, ShuffleReplyMessage.serializer);
+
+        /*---------------------- Register Message Handlers -------------------------- */
+        registerMessageHandler(channelId, JoinMessage.MSG_ID, this::uponJoin, this::uponMsgFail);
+        registerMessageHandler(channelId, ForwardJoinMessage.MSG_ID, this::uponForwardJoin, this::uponMsgFail);
+        registerMessageHandler(channelId, NeighborMessage.MSG_ID, this::uponNeighbor, this::uponMsgFail);
+        registerMessageHandler(channelId, NeighborReplyMessage.MSG_ID, this::uponNeighborReply, this::uponMsgFail);
+        registerMessageHandler(channelId, DisconnectMessage.MSG_ID, this::uponDisconnect, this::uponDisconnectSent,
+                this::uponDisconnectFail);
+        registerMessageHandler(channelId, ShuffleMessage.MSG_ID, this::uponShuffle, this::uponMsgFail);
+        registerMessageHandler(channelId, ShuffleReplyMessage.MSG_ID, this::uponShuffleReply, this::uponMsgFail);
+
+        /*--------------------- Register Timer Handlers ----------------------------- */
+        registerTimerHandler(ShuffleTimer.TIMER_ID, this::uponShuffleTimer);
+        registerTimerHandler(NeighborTimer.TIMER_ID, this::uponNeighborTimer);
+
+        /*-------------------- Register Channel Events ------------------------------- */
+        registerChannelEventHandler(channelId, OutConnectionDown.EVENT_ID, this::uponOutConnectionDown);
+        registerChannelEventHandler(channelId, OutConnectionFailed.EVENT_ID, this::uponOutConnectionFailed);
+        registerChannelEventHandler(channelId, OutConnectionUp.EVENT_ID, this::uponOutConnectionUp);
+        registerChannelEventHandler(channelId, InConnectionUp.EVENT_ID, this::uponInConnectionUp);
+        registerChannelEventHandler(channelId, InConnectionDown.EVENT_ID, this::uponInConnectionDown);
+
+        // If we define a contact node, we join the overlay through it: the contact adds us to its active view and
+        // forwards our join to its own active peers
+        if (properties.containsKey("contact")) {
+            try {
+                String contact = properties.getProperty("contact");
+                String[] hostElems = contact.split(":");
+                Host contactHost = new Host(InetAddress.getByName(hostElems[0]), Short.parseShort(hostElems[1]));
+                addToActive(contactHost);
+                sendMessage(channelId, new JoinMessage(), contactHost);
+            } catch (Exception e) {
+                logger.error("Invalid contact on configuration: '" + properties.getProperty("contact"));
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+
+        // Set up a periodic timer to send shuffle messages
+        setupPeriodicTimer(new ShuffleTimer(), shuffleTimer, shuffleTimer);
+
+        triggerNotification(new ChannelNotification(self, channelId));
+    }
+
+    /*--------------------------------- Timers ---------------------------------------- */
+    // When the shuffle timer is triggered, we send a sample of both views (including ourselves) to a random active
+    // peer, to refresh the passive views (directly, without the random walk of the original protocol). If the active
+    // view is not full, we also try to promote a passive peer
+    private void uponShuffleTimer(ShuffleTimer timer, long timerId) {
+        logger.debug("Active view [{}] {} Passive view [{}] {}", active.size(), active, passive.size(), passive);
+
+        if (active.size() < activeViewSize)
+            promoteRandomPassive();
+
+        Host target = active.getRandom(rnd);
+        if (target != null && connected.contains(target)) {
+            Set<Host> subset = active.getRandomSubsetExcluding(subsetSize, target, rnd);
+            subset.addAll(passive.getRandomSubsetExcluding(subsetSize, target, rnd));
+            subset.add(self);
+            ShuffleMessage msg = new ShuffleMessage(subset);
+            sendMessage(channelId, msg, target);
+            logger.debug("Sent {} to {}", msg, target);
+        }
+    }
+
+    // A passive peer did not reply to our neighbor request in time: we give up on it as if it had rejected the
+    // request, so that it does not keep us from promoting other passive peers
+    private void uponNeighborTimer(NeighborTimer timer, long timerId) {
+        Host peer = timer.getPeer();
+        Long pendingTimer = pendingNeighbors.get(peer);
+        if (pendingTimer == null || pendingTimer != timerId) // it replied, or failed, meanwhile
+            return;
+        logger.debug("Neighbor request to {} timed out", peer);
+        pendingNeighbors.remove(peer);
+        passive.remove(peer);
+        if (!active.contains(peer))
+            closeConnection(peer);
+        if (active.size() < activeViewSize)
+            promoteRandomPassive();
+    }
+
+    /*--------------------------------- Messages ---------------------------------------- */
+    // A new node joined through us: we add it to our active view and start random walks through our other active peers
+    // so that it ends up in the views of other nodes as well
+    private void uponJoin(JoinMessage msg, Host from, short sourceProto, int channelId) {
+        logger.debug("Received {} from {}", msg, from);
+        addToActive(from);
+        for (Host peer : active) {
+            if (!peer.equals(from))
+                sendMessage(channelId, new ForwardJoinMessage(from, activeRandomWalkLength), peer);
+        }
+    }
+
+    // A step of the random walk of a join: the new node is added to the passive view halfway through the walk, and to
+    // the active view at the end of it (the new node is asked to add us back with a priority neighbor request)
+    private void uponForwardJoin(ForwardJoinMessage msg, Host from, short sourceProto, int channelId) {
+        logger.debug("Received {} from {}", msg, from);
+        Host newNode = msg.getNewNode();
+        if (newNode.equals(self))
+            return;
+        if (msg.getTtl() == 0 || active.size() <= 1) {
+            if (!active.contains(newNode)) {
+                addToActive(newNode);
+                sendMessage(channelId, new NeighborMessage(true), newNode);
+            }
+            return;
+        }
+        if (msg.getTtl() == passiveRandomWalkLength)
+            addToPassive(newNode);
+        Host next = randomActiveExcluding(from, newNode);
+        if (next != null)
+            sendMessage(channelId, new ForwardJoinMessage(newNode, msg.getTtl() - 1), next);
+        else if (!active.contains(newNode)) { // nowhere to forward, end the walk here
+            addToActive(newNode);
+            sendMessage(channelId, new NeighborMessage(true), newNode);
+        }
+    }
+
+    // A peer asks to join our active view. We accept if it has priority (its active view is empty, or it is a
+    // joining node) or if we have room for it. The reply uses the connection the peer opened to us
+    private void uponNeighbor(NeighborMessage msg, Host from, short sourceProto, int channelId) {
+        logger.debug("Received {} from {}", msg, from);
+        boolean accept = active.contains(from) || msg.isPriority() || active.size() < activeViewSize;
+        if (accept)
+            addToActive(from);
+        sendMessage(channelId, new NeighborReplyMessage(accept), from, TCPChannel.CONNECTION_IN);
+    }
+
+    // Reply to our neighbor request: if accepted, the peer moves to our active view (its connection is already open),
+    // otherwise we close the connection and try another passive peer
+    private void uponNeighborReply(NeighborReplyMessage msg, Host from, short sourceProto, int channelId) {
+        logger.debug("Received {} from {}", msg, from);
+        if (!pendingNeighbors.containsKey(from))
+            return;
+        if (msg.isAccepted()) {
+            addToActive(from);
+            removePendingNeighbor(from);
+            if (connected.add(from)) // the connection was opened (and is up) before the reply arrived
+                peerUp(from);
+        } else {
+            removePendingNeighbor(from);
+            closeConnection(from);
+            if (active.size() < activeViewSize)
+                promoteRandomPassive();
+        }
+    }
+
+    // The peer removed us from its active view, so we remove it from ours and keep it in the passive view
+    private void uponDisconnect(DisconnectMessage msg, Host from, short sourceProto, int channelId) {
+        logger.debug("Received {} from {}", msg, from);
+        if (removeFromActive(from)) {
+            addToPassive(from);
+            if (active.size() < activeViewSize)
+                promoteRandomPassive();
+        }
+    }
+
+    // We close the connection to a peer dropped from the active view only once it got our Disconnect (if the connection
+    // was closed right away, the Disconnect could be dropped, and the peer would keep us in its active view)
+    private void uponDisconnectSent(DisconnectMessage msg, Host to, short destProto, int channelId) {
+        closeDroppedConnection(to);
+    }
+
+    private void uponDisconnectFail(DisconnectMessage msg, Host to, short destProto, Throwable throwable, int channelId) {
+        uponMsgFail(msg, to, destProto, throwable, channelId);
+        closeDroppedConnection(to);
+    }
+
+    private void closeDroppedConnection(Host peer) {
+        if (!active.contains(peer) && !pendingNeighbors.containsKey(peer)) // else it was added back meanwhile
+            closeConnection(peer);
+    }
+
+    // When receiving a shuffle message, we reply with a sample of our passive view of the same size, and add the
+    // received peers to the passive view
+    private void uponShuffle(ShuffleMessage msg, Host from, short sourceProto, int channelId) {
+        logger.debug("Received {} from {}", msg, from);
+        Set<Host> subset = passive.getRandomSubsetExcluding(msg.getSample().size(), from, rnd);
+        ShuffleReplyMessage reply = new ShuffleReplyMessage(subset);
+        sendMessage(channelId, reply, from, TCPChannel.CONNECTION_IN);
+        logger.debug("Sent {} to {}", reply, from);
+        msg.getSample().forEach(this::addToPassive);
+    }
+
+    // Upon receiving a shuffle reply, we add the received peers to the passive view
+    private void uponShuffleReply(ShuffleReplyMessage msg, Host from, short sourceProto, int channelId) {
+        logger.debug("Received {} from {}", msg, from);
+        msg.getSample().forEach(this::addToPassive);
+    }
+
+    /*--------------------------------- Views ---------------------------------------- */
+
+    // Adds a peer to the active view, opening a connection to it. If the active view is full, a random active peer is
+    // dropped (moved to the passive view) to make room
+    private void addToActive(Host peer) {
+        if (peer.equals(self) || active.contains(peer))
+            return;
+        if (active.size() >= activeViewSize) {
+            Host dropped = active.getRandom(rnd);
+            sendMessage(channelId, new DisconnectMessage(), dropped);
+            removeFromActive(dropped, false); // the connection is closed once the Disconnect is sent
+            addToPassive(dropped);
+        }
+        passive.remove(peer);
+        active.add(peer);
+        if (!pendingNeighbors.containsKey(peer)) // else the connection is already open
+            openConnection(peer);
+        logger.debug("Added {} to active view", peer);
+    }
+
+    // Removes a peer from the active view and closes the connection to it
+    private boolean removeFromActive(Host peer) {
+        return removeFromActive(peer, true);
+    }
+
+    private boolean removeFromActive(Host peer, boolean close) {
+        if (!active.remove(peer))
+            return false;
+        if (close)
+            closeConnection(peer);
+        if (connected.remove(peer))
+            peerDown(peer);
+        logger.debug("Removed {} from active view", peer);
+        return true;
+    }
+
+    // Connections of the active view change rarely, so each change is notified right away, as a PeerUp or PeerDown and
+    // as a MembershipDelta with a single peer
+    private void peerUp(Host peer) {
+        triggerNotification(new PeerUp(peer));
+        triggerNotification(new MembershipDelta(Collections.singletonMap(peer, TCPChannel.CONNECTION_OUT),
+                Collections.emptySet()));
+    }
+
+    private void peerDown(Host peer) {
+        triggerNotification(new PeerDown(peer));
+        triggerNotification(new MembershipDelta(Collections.emptyMap(), Collections.singleton(peer)));
+    }
+
+    // Adds a peer to the passive view, dropping a random passive peer if the view is full
+    private void addToPassive(Host peer) {
+        if (peer.equals(self) || active.contains(peer) || passive.contains(peer))
+            return;
+        if (passive.size() >= passiveViewSize)
+            passive.remove(passive.getRandom(rnd));
+        passive.add(peer);
+    }
+
+    // Asks a random passive peer to join the active view (with priority if we have no active peers left)
+    private void promoteRandomPassive() {
+        if (!pendingNeighbors.isEmpty() || passive.isEmpty())
+            return;
+        Host candidate = passive.getRandom(rnd);
+        pendingNeighbors.put(candidate, setupTimer(new NeighborTimer(candidate), neighborTimeout));
+        openConnection(candidate);
+        sendMessage(channelId, new NeighborMessage(active.isEmpty()), candidate);
+        logger.debug("Asking {} to join the active view", candidate);
+    }
+
+    // Removes a peer from the pending neighbor requests, cancelling the timeout of its request
+    private boolean removePendingNeighbor(Host peer) {
+        Long timerId = pendingNeighbors.remove(peer);
+        if (timerId == null)
+            return false;
+        cancelTimer(timerId);
+        return true;
+    }
+
+    private Host randomActiveExcluding(Host exclude1, Host exclude2) {
+        List<Host> candidates = new ArrayList<>(active.size());
+        for (Host h : active) {
+            if (!h.equals(exclude1) && !h.equals(exclude2))
+                candidates.add(h);
+        }
+        return candidates.isEmpty() ? null : candidates.get(rnd.nextInt(candidates.size()));
+    }
+
+    /* --------------------------------- TCPChannel Events ---------------------------- */
+
+    //When the connection to an active peer is established, we announce it
+    private void uponOutConnectionUp(OutConnectionUp event, int channelId) {
+        Host peer = event.getNode();
+        logger.debug("Connection to {} is up", peer);
+        if (active.contains(peer) && connected.add(peer)) {
+            logger.debug("Added {} to membership", peer);
+            peerUp(peer);
+        }
+    }
+
+    //When the connection to an active peer (or to a peer we asked to join) goes down, we consider it failed and
+    //replace it with a passive peer
+    private void uponOutConnectionDown(OutConnectionDown event, int channelId) {
+        Host peer = event.getNode();
+        logger.debug("Connection to {} is down cause {}", peer, event.getCause());
+        boolean wasNeighbor = removePendingNeighbor(peer);
+        boolean wasActive = active.remove(peer);
+        if (wasActive) {
+            if (connected.remove(peer))
+                peerDown(peer);
+            logger.debug("Removed {} from membership", peer);
+        }
+        if (wasNeighbor || wasActive)
+            promoteRandomPassive();
+    }
+
+    //When a connection fails, the peer is considered failed: it is removed from both views
+    private void uponOutConnectionFailed(OutConnectionFailed<ProtoMessage> event, int channelId) {
+        Host peer = event.getNode();
+        logger.debug("Connection to {} failed cause: {}", peer, event.getCause());
+        passive.remove(peer);
+        boolean wasNeighbor = removePendingNeighbor(peer);
+        if (active.remove(peer)) {
+            if (connected.remove(peer))
+                peerDown(peer);
+        }
+        if (wasNeighbor || active.size() < activeViewSize)
+            promoteRandomPassive();
+    }
+
+    private void uponInConnectionUp(InConnectionUp event, int channelId) {
+        logger.trace("Connection from {} is up", event.getNode());
+    }
+
+    private void uponInConnectionDown(InConnectionDown event, int channelId) {
+        logger.trace("Connection from {} is down, cause: {}", event.getNode(), event.getCause());
+    }
+
+    private void uponMsgFail(ProtoMessage msg, Host host, short destProto, Throwable throwable, int channelId) {
+        logger.error("Message {} to {} failed, reason: {}", msg, host, throwable);
+    }
+
+}
@@ -1,6 +1,7 @@
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pt.unl.fct.di.novasys.babel.core.Babel;
+import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
 import pt.unl.fct.di.novasys.babel.exceptions.HandlerRegistrationException;
 import pt.unl.fct.di.novasys.babel.exceptions.InvalidParameterException;
 import pt.unl.fct.di.novasys.babel.exceptions.ProtocolAlreadyExistsException;
@@ -21,17 +22,22 @@ public class Main {
         //Creates a new instance of the FullMembership Protocol
         ChatApp chat = new ChatApp();
         FloodGossip flood = new FloodGossip();
-        FullMembership fullMembership = new FullMembership();
+        //The membership protocol is selected with membership=full (default) or membership=hyparview
+        GenericProtocol membership;
+        if (props.getProperty("membership", "full").equals("hyparview"))
+            membership = new HyParView();
+        else
+            membership = new FullMembership();
 
         //Registers the protocol in babel
         babel.registerProtocol(chat);
         babel.registerProtocol(flood);
-        babel.registerProtocol(fullMembership);
+        babel.registerProtocol(membership);
 
         //Initializes the protocol
         chat.init(props);
         flood.init(props);
-        fullMembership.init(props);
+        membership.init(props);
 
         //Starts babel
         babel.start();
@@ -0,0 +1,31 @@
+package messages;
+
+
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+public class DisconnectMessage extends ProtoMessage {
+
+    public final static short MSG_ID = 107;
+
+    public DisconnectMessage() {
+        super(MSG_ID);
+    }
+
+    @Override
+    public String toString() {
+        return "DisconnectMessage{}";
+    }
+
+    public static ISerializer<DisconnectMessage> serializer = new ISerializer<DisconnectMessage>() {
+        @Override
+        public void serialize(DisconnectMessage msg, ByteBuf out) {
+        }
+
+        @Override
+        public DisconnectMessage deserialize(ByteBuf in) {
+            return new DisconnectMessage();
+        }
+    };
+}
@@ -0,0 +1,54 @@
+package messages;
+
+
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.io.IOException;
+
+public class ForwardJoinMessage extends ProtoMessage {
+
+    public final static short MSG_ID = 104;
+
+    private final Host newNode; // node that joined the overlay
+    private final int ttl; // remaining hops of the random walk
+
+    public ForwardJoinMessage(Host newNode, int ttl) {
+        super(MSG_ID);
+        this.newNode = newNode;
+        this.ttl = ttl;
+    }
+
+    public Host getNewNode() {
+        return newNode;
+    }
+
+    public int getTtl() {
+        return ttl;
+    }
+
+    @Override
+    public String toString() {
+        return "ForwardJoinMessage{" +
+                "newNode=" + newNode +
+                ", ttl=" + ttl +
+                '}';
+    }
+
+    public static ISerializer<ForwardJoinMessage> serializer = new ISerializer<ForwardJoinMessage>() {
+        @Override
+        public void serialize(ForwardJoinMessage msg, ByteBuf out) throws IOException {
+            Host.serializer.serialize(msg.newNode, out);
+            out.writeInt(msg.ttl);
+        }
+
+        @Override
+        public ForwardJoinMessage deserialize(ByteBuf in) throws IOException {
+            Host newNode = Host.serializer.deserialize(in);
+            int ttl = in.readInt();
+            return new ForwardJoinMessage(newNode, ttl);
+        }
+    };
+}
@@ -13,14 +13,15 @@ public class GossipMessage extends ProtoMessage {
     private final UUID mid;
     private int round;
 
-    private final String content;
+    private String content; // decoded lazily from the payload, for messages received from the network
+    private final ByteBuf payload; // UTF-8 bytes of the content, for messages received from the network
 
     @Override
     public String toString() {
         return "GossipMessage{" +
                 "mid=" + mid +
                 ", round=" + round +
-                ", content='" + content + '\'' +
+                ", content='" + getContent() + '\'' +
                 '}';
     }
 
@@ -29,6 +30,15 @@ public class GossipMessage extends ProtoMessage {
         this.mid = mid;
         this.round = round;
         this.content = content;
+        this.payload = null;
+    }
+
+    public GossipMessage(UUID mid, int round, ByteBuf payload) {
+        super(MSG_ID);
+        this.mid = mid;
+        this.round = round;
+        this.content = null;
+        this.payload = payload;
     }
 
     public int getRound() {
@@ -44,6 +54,8 @@ public class GossipMessage extends ProtoMessage {
     }
 
     public String getContent() {
+        if (content == null)
+            content = Utils.toUTF8String(payload);
         return content;
     }
 
@@ -53,7 +65,11 @@ public class GossipMessage extends ProtoMessage {
             out.writeLong(gossipMessage.mid.getMostSignificantBits());
             out.writeLong(gossipMessage.mid.getLeastSignificantBits());
             out.writeInt(gossipMessage.round);
-            Utils.encodeUTF8(gossipMessage.content, out);
+            // relayed messages are written back with the bytes they were received with
+            if (gossipMessage.payload != null)
+                Utils.writeUTF8Bytes(gossipMessage.payload, out);
+            else
+                Utils.encodeUTF8(gossipMessage.content, out);
         }
 
         @Override
@@ -62,8 +78,8 @@ public class GossipMessage extends ProtoMessage {
             long leastSig = in.readLong();
             UUID mid = new UUID(mostSig, leastSig);
             int round = in.readInt();
-            String content = Utils.decodeUTF8(in);
-            return new GossipMessage(mid, round, content);
+            ByteBuf payload = Utils.readUTF8Bytes(in);
+            return new GossipMessage(mid, round, payload);
         }
     };
 }
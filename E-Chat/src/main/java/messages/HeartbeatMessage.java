@@ -0,0 +1,41 @@
+package messages;
+
+
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+public class HeartbeatMessage extends ProtoMessage {
+
+    public final static short MSG_ID = 108;
+
+    private final long seq; // sequence number of the heartbeat
+
+    public HeartbeatMessage(long seq) {
+        super(MSG_ID);
+        this.seq = seq;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    @Override
+    public String toString() {
+        return "HeartbeatMessage{" +
+                "seq=" + seq +
+                '}';
+    }
+
+    public static ISerializer<HeartbeatMessage> serializer = new ISerializer<HeartbeatMessage>() {
+        @Override
+        public void serialize(HeartbeatMessage msg, ByteBuf out) {
+            out.writeLong(msg.seq);
+        }
+
+        @Override
+        public HeartbeatMessage deserialize(ByteBuf in) {
+            return new HeartbeatMessage(in.readLong());
+        }
+    };
+}
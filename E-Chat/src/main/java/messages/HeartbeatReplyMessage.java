@@ -0,0 +1,41 @@
+package messages;
+
+
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+public class HeartbeatReplyMessage extends ProtoMessage {
+
+    public final static short MSG_ID = 109;
+
+    private final long seq; // sequence number of the heartbeat
+
+    public HeartbeatReplyMessage(long seq) {
+        super(MSG_ID);
+        this.seq = seq;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    @Override
+    public String toString() {
+        return "HeartbeatReplyMessage{" +
+                "seq=" + seq +
+                '}';
+    }
+
+    public static ISerializer<HeartbeatReplyMessage> serializer = new ISerializer<HeartbeatReplyMessage>() {
+        @Override
+        public void serialize(HeartbeatReplyMessage msg, ByteBuf out) {
+            out.writeLong(msg.seq);
+        }
+
+        @Override
+        public HeartbeatReplyMessage deserialize(ByteBuf in) {
+            return new HeartbeatReplyMessage(in.readLong());
+        }
+    };
+}
@@ -0,0 +1,236 @@
+package messages;
+
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+
+/**
+ * Compact encoding of a sample of hosts, used by the shuffle messages
+ * IPv4 hosts are packed as 6 bytes each (address and port). When it is smaller, the packed hosts are instead sorted and
+ * written as varint deltas, which takes 2 or 3 bytes per host when the hosts share a subnet and a port, as in a
+ * cluster or a docker network. Other (IPv6) hosts are written with Host.serializer after the packed ones.
+ * A decoded sample keeps the IPv4 hosts in primitive arrays: the Host objects are only created when the sample is
+ * iterated, so decoding a sample allocates two arrays instead of one Host (and one InetAddress) per entry.
+ */
+public class HostSample extends AbstractSet<Host> {
+
+    private static final byte PACKED = 0; // 6 bytes per IPv4 host
+    private static final byte DELTA = 1; // sorted, varint deltas between consecutive IPv4 hosts
+
+    private final int[] addresses; // IPv4 addresses, in network byte order
+    private final int[] ports;
+    private final List<Host> others; // hosts that are not IPv4
+
+    private HostSample(int[] addresses, int[] ports, List<Host> others) {
+        this.addresses = addresses;
+        this.ports = ports;
+        this.others = others;
+    }
+
+    @Override
+    public int size() {
+        return addresses.length + others.size();
+    }
+
+    @Override
+    public Iterator<Host> iterator() {
+        return new Iterator<Host>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public Host next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                int i = next++;
+                return i < addresses.length ? toHost(addresses[i], ports[i]) : others.get(i - addresses.length);
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Host))
+            return false;
+        Host host = (Host) o;
+        if (host.getAddress() instanceof Inet4Address) {
+            int address = toInt(host.getAddress());
+            for (int i = 0; i < addresses.length; i++) {
+                if (addresses[i] == address && ports[i] == host.getPort())
+                    return true;
+            }
+            return false;
+        }
+        return others.contains(host);
+    }
+
+    /**
+     * Writes a sample of hosts, using the smaller of the packed and delta encodings for the IPv4 hosts
+     * @param sample the hosts to write
+     * @param out the buffer to write to
+     */
+    public static void serialize(Set<Host> sample, ByteBuf out) throws IOException {
+        // pack each IPv4 host in a long (address in the high 32 bits of 48, port in the low 16)
+        long[] keys = new long[sample.size()];
+        int n = 0;
+        List<Host> others = new ArrayList<>(0);
+        if (sample instanceof HostSample) {
+            HostSample hostSample = (HostSample) sample;
+            for (int i = 0; i < hostSample.addresses.length; i++)
+                keys[n++] = toKey(hostSample.addresses[i], hostSample.ports[i]);
+            others = hostSample.others;
+        } else {
+            for (Host h : sample) {
+                if (h.getAddress() instanceof Inet4Address)
+                    keys[n++] = toKey(toInt(h.getAddress()), h.getPort());
+                else
+                    others.add(h);
+            }
+        }
+
+        long[] sorted = Arrays.copyOf(keys, n);
+        Arrays.sort(sorted);
+        int deltaSize = 0;
+        long previous = 0;
+        for (long key : sorted) {
+            deltaSize += varLongSize(key - previous);
+            previous = key;
+        }
+
+        writeVarInt(out, n);
+        if (deltaSize < n * 6) {
+            out.writeByte(DELTA);
+            previous = 0;
+            for (long key : sorted) {
+                writeVarLong(out, key - previous);
+                previous = key;
+            }
+        } else {
+            out.writeByte(PACKED);
+            for (int i = 0; i < n; i++) {
+                out.writeInt((int) (keys[i] >>> 16));
+                out.writeShort((int) keys[i]);
+            }
+        }
+
+        writeVarInt(out, others.size());
+        for (Host h : others)
+            Host.serializer.serialize(h, out);
+    }
+
+    /**
+     * Reads a sample written by serialize, without creating the Host objects of the IPv4 hosts
+     * The sizes read are checked against the bytes left in the buffer, and duplicated hosts are dropped, so that a
+     * corrupt or hostile message can neither cause a huge allocation nor break the Set contract
+     * @param in the buffer to read from
+     * @return the sample
+     */
+    public static HostSample deserialize(ByteBuf in) throws IOException {
+        int n = readSize(in, 1); // at least one byte per host (in delta mode)
+        long[] keys = new long[n];
+        byte mode = in.readByte();
+        if (mode != PACKED && mode != DELTA)
+            throw new IOException("Unknown sample encoding: " + mode);
+        if (mode == DELTA) {
+            long key = 0;
+            for (int i = 0; i < n; i++) {
+                key += readVarLong(in);
+                keys[i] = key;
+            }
+        } else {
+            if (n * 6L > in.readableBytes())
+                throw new IOException("Invalid sample size: " + n);
+            for (int i = 0; i < n; i++)
+                keys[i] = toKey(in.readInt(), in.readUnsignedShort());
+        }
+
+        // drop the duplicates (samples written by serialize have none)
+        Arrays.sort(keys);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || keys[i] != keys[i - 1])
+                keys[unique++] = keys[i];
+        }
+        int[] addresses = new int[unique];
+        int[] ports = new int[unique];
+        for (int i = 0; i < unique; i++) {
+            addresses[i] = (int) (keys[i] >>> 16);
+            ports[i] = (int) (keys[i] & 0xFFFF);
+        }
+
+        int nOthers = readSize(in, 1);
+        List<Host> others = nOthers == 0 ? Collections.emptyList() : new ArrayList<>(nOthers);
+        for (int i = 0; i < nOthers; i++) {
+            Host h = Host.serializer.deserialize(in);
+            if (!others.contains(h))
+                others.add(h);
+        }
+        return new HostSample(addresses, ports, others);
+    }
+
+    // Reads a number of entries, checking that the buffer has at least minBytes bytes left for each entry
+    private static int readSize(ByteBuf in, int minBytes) throws IOException {
+        long n = readVarLong(in);
+        if (n < 0 || n * minBytes > in.readableBytes())
+            throw new IOException("Invalid sample size: " + n);
+        return (int) n;
+    }
+
+    private static long toKey(int address, int port) {
+        return ((address & 0xFFFFFFFFL) << 16) | (port & 0xFFFF);
+    }
+
+    private static int toInt(InetAddress address) {
+        byte[] b = address.getAddress();
+        return ((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF);
+    }
+
+    private static Host toHost(int address, int port) {
+        byte[] b = {(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+        try {
+            return new Host(InetAddress.getByAddress(b), port);
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e); // only thrown for addresses of invalid length
+        }
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    private static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuf in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeVarInt(ByteBuf out, int value) {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+}
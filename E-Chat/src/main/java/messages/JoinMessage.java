@@ -0,0 +1,31 @@
+package messages;
+
+
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+public class JoinMessage extends ProtoMessage {
+
+    public final static short MSG_ID = 103;
+
+    public JoinMessage() {
+        super(MSG_ID);
+    }
+
+    @Override
+    public String toString() {
+        return "JoinMessage{}";
+    }
+
+    public static ISerializer<JoinMessage> serializer = new ISerializer<JoinMessage>() {
+        @Override
+        public void serialize(JoinMessage msg, ByteBuf out) {
+        }
+
+        @Override
+        public JoinMessage deserialize(ByteBuf in) {
+            return new JoinMessage();
+        }
+    };
+}
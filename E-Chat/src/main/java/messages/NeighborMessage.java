@@ -0,0 +1,41 @@
+package messages;
+
+
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+public class NeighborMessage extends ProtoMessage {
+
+    public final static short MSG_ID = 105;
+
+    private final boolean priority;
+
+    public NeighborMessage(boolean priority) {
+        super(MSG_ID);
+        this.priority = priority;
+    }
+
+    public boolean isPriority() {
+        return priority;
+    }
+
+    @Override
+    public String toString() {
+        return "NeighborMessage{" +
+                "priority=" + priority +
+                '}';
+    }
+
+    public static ISerializer<NeighborMessage> serializer = new ISerializer<NeighborMessage>() {
+        @Override
+        public void serialize(NeighborMessage msg, ByteBuf out) {
+            out.writeBoolean(msg.priority);
+        }
+
+        @Override
+        public NeighborMessage deserialize(ByteBuf in) {
+            return new NeighborMessage(in.readBoolean());
+        }
+    };
+}
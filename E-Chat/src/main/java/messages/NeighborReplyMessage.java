@@ -0,0 +1,41 @@
+package messages;
+
+
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+public class NeighborReplyMessage extends ProtoMessage {
+
+    public final static short MSG_ID = 106;
+
+    private final boolean accepted;
+
+    public NeighborReplyMessage(boolean accepted) {
+        super(MSG_ID);
+        this.accepted = accepted;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    @Override
+    public String toString() {
+        return "NeighborReplyMessage{" +
+                "accepted=" + accepted +
+                '}';
+    }
+
+    public static ISerializer<NeighborReplyMessage> serializer = new ISerializer<NeighborReplyMessage>() {
+        @Override
+        public void serialize(NeighborReplyMessage msg, ByteBuf out) {
+            out.writeBoolean(msg.accepted);
+        }
+
+        @Override
+        public NeighborReplyMessage deserialize(ByteBuf in) {
+            return new NeighborReplyMessage(in.readBoolean());
+        }
+    };
+}
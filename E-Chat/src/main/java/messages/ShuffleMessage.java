@@ -7,7 +7,6 @@ import pt.unl.fct.di.novasys.network.ISerializer;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.Set;
 
 public class ShuffleMessage extends ProtoMessage {
@@ -37,18 +36,12 @@ public class ShuffleMessage extends ProtoMessage {
     public static ISerializer<ShuffleMessage> serializer = new ISerializer<ShuffleMessage>() {
         @Override
         public void serialize(ShuffleMessage shuffleMessage, ByteBuf out) throws IOException {
-            out.writeInt(shuffleMessage.sample.size());
-            for (Host h : shuffleMessage.sample)
-                Host.serializer.serialize(h, out);
+            HostSample.serialize(shuffleMessage.sample, out);
         }
 
         @Override
         public ShuffleMessage deserialize(ByteBuf in) throws IOException {
-            int size = in.readInt();
-            Set<Host> subset = new HashSet<>(size, 1);
-            for (int i = 0; i < size; i++)
-                subset.add(Host.serializer.deserialize(in));
-            return new ShuffleMessage(subset);
+            return new ShuffleMessage(HostSample.deserialize(in));
         }
     };
 }
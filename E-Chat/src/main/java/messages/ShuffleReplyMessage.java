@@ -7,7 +7,6 @@ import pt.unl.fct.di.novasys.network.ISerializer;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.Set;
 
 public class ShuffleReplyMessage extends ProtoMessage {
@@ -35,18 +34,12 @@ public class ShuffleReplyMessage extends ProtoMessage {
     public static ISerializer<ShuffleReplyMessage> serializer = new ISerializer<ShuffleReplyMessage>() {
         @Override
         public void serialize(ShuffleReplyMessage shuffleMessage, ByteBuf out) throws IOException {
-            out.writeInt(shuffleMessage.sample.size());
-            for (Host h : shuffleMessage.sample)
-                Host.serializer.serialize(h, out);
+            HostSample.serialize(shuffleMessage.sample, out);
         }
 
         @Override
         public ShuffleReplyMessage deserialize(ByteBuf in) throws IOException {
-            int size = in.readInt();
-            Set<Host> subset = new HashSet<>(size, 1);
-            for (int i = 0; i < size; i++)
-                subset.add(Host.serializer.deserialize(in));
-            return new ShuffleReplyMessage(subset);
+            return new ShuffleReplyMessage(HostSample.deserialize(in));
         }
     };
 }
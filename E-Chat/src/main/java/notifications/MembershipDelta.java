@@ -0,0 +1,38 @@
+package notifications;
+
+import pt.unl.fct.di.novasys.babel.generic.ProtoNotification;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A batch of changes to the membership: the peers added (or whose connection changed) and removed since the previous
+ * MembershipDelta. A peer is never in both, and applying every delta in order to an empty view gives the current
+ * membership (removed may include peers that were added and removed within the same batch).
+ */
+public class MembershipDelta extends ProtoNotification {
+
+    public static final short NOTIFICATION_ID = 104;
+
+    private final Map<Host, Integer> added;
+    private final Set<Host> removed;
+
+    public MembershipDelta(Map<Host, Integer> added, Set<Host> removed) {
+        super(NOTIFICATION_ID);
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * @return the added peers, each with the connection to send messages to it through (TCPChannel.CONNECTION_OUT or
+     * CONNECTION_IN)
+     */
+    public Map<Host, Integer> getAdded() {
+        return added;
+    }
+
+    public Set<Host> getRemoved() {
+        return removed;
+    }
+}
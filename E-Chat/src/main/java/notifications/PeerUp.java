@@ -1,6 +1,7 @@
 package notifications;
 
 import pt.unl.fct.di.novasys.babel.generic.ProtoNotification;
+import pt.unl.fct.di.novasys.channel.tcp.TCPChannel;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 public class PeerUp extends ProtoNotification {
@@ -8,14 +9,27 @@ public class PeerUp extends ProtoNotification {
     public static final short NOTIFICATION_ID = 102;
 
     private final Host peer;
+    private final int connection; // TCPChannel.CONNECTION_OUT or TCPChannel.CONNECTION_IN
 
     public PeerUp(Host peer) {
+        this(peer, TCPChannel.CONNECTION_OUT);
+    }
+
+    public PeerUp(Host peer, int connection) {
         super(NOTIFICATION_ID);
         this.peer = peer;
+        this.connection = connection;
     }
 
 
     public Host getPeer() {
         return peer;
     }
+
+    /**
+     * @return the connection to send messages to the peer through (TCPChannel.CONNECTION_OUT or CONNECTION_IN)
+     */
+    public int getConnection() {
+        return connection;
+    }
 }
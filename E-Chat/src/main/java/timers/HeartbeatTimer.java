@@ -0,0 +1,18 @@
+package timers;
+
+
+import pt.unl.fct.di.novasys.babel.generic.ProtoTimer;
+
+public class HeartbeatTimer extends ProtoTimer {
+
+    public static final short TIMER_ID = 103;
+
+    public HeartbeatTimer() {
+        super(TIMER_ID);
+    }
+
+    @Override
+    public ProtoTimer clone() {
+        return this;
+    }
+}
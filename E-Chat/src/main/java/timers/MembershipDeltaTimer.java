@@ -0,0 +1,18 @@
+package timers;
+
+
+import pt.unl.fct.di.novasys.babel.generic.ProtoTimer;
+
+public class MembershipDeltaTimer extends ProtoTimer {
+
+    public static final short TIMER_ID = 104;
+
+    public MembershipDeltaTimer() {
+        super(TIMER_ID);
+    }
+
+    @Override
+    public ProtoTimer clone() {
+        return this;
+    }
+}
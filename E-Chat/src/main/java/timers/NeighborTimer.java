@@ -0,0 +1,26 @@
+package timers;
+
+
+import pt.unl.fct.di.novasys.babel.generic.ProtoTimer;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+public class NeighborTimer extends ProtoTimer {
+
+    public static final short TIMER_ID = 106;
+
+    private final Host peer;
+
+    public NeighborTimer(Host peer) {
+        super(TIMER_ID);
+        this.peer = peer;
+    }
+
+    public Host getPeer() {
+        return peer;
+    }
+
+    @Override
+    public ProtoTimer clone() {
+        return this;
+    }
+}
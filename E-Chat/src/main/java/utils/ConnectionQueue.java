@@ -0,0 +1,86 @@
+package utils;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hosts waiting for a connection attempt, ordered by priority (lower values first) and then by arrival
+ * A host is queued at most once: queueing it again with a higher priority moves it up, otherwise it is ignored
+ */
+public class ConnectionQueue {
+
+    public static final int PRIORITY_CONTACT = 0; // contact node given in the configuration
+    public static final int PRIORITY_SENDER = 1; // node that sent us a sample (so it is alive)
+    public static final int PRIORITY_SNAPSHOT = 2; // node saved in the membership snapshot of a previous run
+    public static final int PRIORITY_SAMPLE = 3; // node we only heard about in a sample
+    private static final int N_PRIORITIES = 4;
+
+    private final ArrayDeque<Host>[] queues;
+    private final Set<Host> queued;
+
+    @SuppressWarnings("unchecked")
+    public ConnectionQueue() {
+        this.queues = new ArrayDeque[N_PRIORITIES];
+        for (int i = 0; i < N_PRIORITIES; i++)
+            queues[i] = new ArrayDeque<>();
+        this.queued = new HashSet<>();
+    }
+
+    /**
+     * @param host host to connect to
+     * @param priority one of the PRIORITY constants
+     * @return true if the host was not queued before
+     */
+    public boolean add(Host host, int priority) {
+        if (queued.add(host)) {
+            queues[priority].add(host);
+            return true;
+        }
+        for (int i = priority + 1; i < N_PRIORITIES; i++) {
+            if (queues[i].remove(host)) { // rare (and bounded by the queue size), only when a host is re-prioritized
+                queues[priority].add(host);
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the next host to connect to, or null if the queue is empty
+     */
+    public Host poll() {
+        for (ArrayDeque<Host> queue : queues) {
+            Host host = queue.poll();
+            if (host != null) {
+                queued.remove(host);
+                return host;
+            }
+        }
+        return null;
+    }
+
+    public boolean remove(Host host) {
+        if (!queued.remove(host))
+            return false;
+        for (ArrayDeque<Host> queue : queues) {
+            if (queue.remove(host))
+                break;
+        }
+        return true;
+    }
+
+    public boolean contains(Host host) {
+        return queued.contains(host);
+    }
+
+    public int size() {
+        return queued.size();
+    }
+
+    public boolean isEmpty() {
+        return queued.isEmpty();
+    }
+}
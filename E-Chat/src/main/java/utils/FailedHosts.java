@@ -0,0 +1,89 @@
+package utils;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Negative cache of the hosts we failed to connect to
+ * After each consecutive failure, a host is blocked for an exponentially growing time (from baseBackoff up to
+ * maxBackoff), during which we neither try to connect to it nor advertise it to other nodes. A host is forgotten (and
+ * its backoff reset) once ttl passes without new failures, or as soon as a connection to it succeeds
+ */
+public class FailedHosts {
+
+    private static class Entry {
+        private int failures; // consecutive failures
+        private long blockedUntil; // no connection attempts before this time (ms)
+        private long expiresAt; // the entry is forgotten after this time (ms)
+    }
+
+    private final long baseBackoff;
+    private final long maxBackoff;
+    private final long ttl;
+    private final Map<Host, Entry> entries;
+
+    /**
+     * @param baseBackoff time a host is blocked after its first failure (ms)
+     * @param maxBackoff maximum time a host is blocked after a failure (ms)
+     * @param ttl time after the last failure of a host until it is forgotten (ms)
+     */
+    public FailedHosts(long baseBackoff, long maxBackoff, long ttl) {
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+        this.ttl = ttl;
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * @param host host that failed
+     * @param now current time (ms)
+     * @return the time the host is blocked for (ms)
+     */
+    public long recordFailure(Host host, long now) {
+        Entry entry = entries.get(host);
+        if (entry == null || now >= entry.expiresAt) {
+            entry = new Entry();
+            entries.put(host, entry);
+        }
+        entry.failures++;
+        long backoff = baseBackoff << Math.min(entry.failures - 1, 30);
+        if (backoff <= 0 || backoff > maxBackoff)
+            backoff = maxBackoff;
+        entry.blockedUntil = now + backoff;
+        entry.expiresAt = now + Math.max(ttl, backoff);
+        return backoff;
+    }
+
+    public void recordSuccess(Host host) {
+        entries.remove(host);
+    }
+
+    /**
+     * @param host host to check
+     * @param now current time (ms)
+     * @return true if we should not connect to the host nor advertise it
+     */
+    public boolean isBlocked(Host host, long now) {
+        Entry entry = entries.get(host);
+        return entry != null && now < entry.blockedUntil;
+    }
+
+    /**
+     * Forgets the hosts whose entry expired
+     * @param now current time (ms)
+     */
+    public void purge(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now >= it.next().expiresAt)
+                it.remove();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,120 @@
+package utils;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Set of hosts backed by an array and by a map from each host to its position in the array
+ * Adding, removing and checking a host are O(1), as in a HashSet, and picking a random host is also O(1): removing a
+ * host moves the last host of the array to its position, so the array has no holes.
+ * Random samples of k hosts are taken with a partial Fisher-Yates shuffle of the array itself, in O(k) and without
+ * copying the set (the order of the hosts in the array is irrelevant, so the shuffle is never undone)
+ */
+public class IndexedHostSet extends AbstractSet<Host> {
+
+    private final List<Host> hosts;
+    private final Map<Host, Integer> positions;
+
+    public IndexedHostSet() {
+        this.hosts = new ArrayList<>();
+        this.positions = new HashMap<>();
+    }
+
+    @Override
+    public boolean add(Host host) {
+        if (positions.containsKey(host))
+            return false;
+        positions.put(host, hosts.size());
+        hosts.add(host);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object host) {
+        Integer position = positions.remove(host);
+        if (position == null)
+            return false;
+        Host last = hosts.remove(hosts.size() - 1);
+        if (position < hosts.size()) {
+            hosts.set(position, last);
+            positions.put(last, position);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object host) {
+        return positions.containsKey(host);
+    }
+
+    @Override
+    public int size() {
+        return hosts.size();
+    }
+
+    @Override
+    public void clear() {
+        hosts.clear();
+        positions.clear();
+    }
+
+    @Override
+    public Iterator<Host> iterator() {
+        return Collections.unmodifiableList(hosts).iterator();
+    }
+
+    /**
+     * @param rnd source of randomness
+     * @return a random host, or null if the set is empty
+     */
+    public Host getRandom(Random rnd) {
+        if (hosts.isEmpty())
+            return null;
+        return hosts.get(rnd.nextInt(hosts.size()));
+    }
+
+    /**
+     * Takes a random sample of the set, in O(sampleSize)
+     * @param sampleSize maximum number of hosts in the sample
+     * @param exclude host that must not be in the sample (may be null or not in the set)
+     * @param rnd source of randomness
+     * @return a new set with min(sampleSize, size) random hosts of this set, other than exclude
+     */
+    public Set<Host> getRandomSubsetExcluding(int sampleSize, Host exclude, Random rnd) {
+        int n = hosts.size();
+        Integer excluded = exclude == null ? null : positions.get(exclude);
+        if (excluded != null) {
+            // move the excluded host to the end of the array and sample only the hosts before it
+            swap(excluded, n - 1);
+            n--;
+        }
+        int k = Math.min(sampleSize, n);
+        Set<Host> sample = new HashSet<>(k * 2);
+        for (int i = 0; i < k; i++) {
+            swap(i, i + rnd.nextInt(n - i));
+            sample.add(hosts.get(i));
+        }
+        return sample;
+    }
+
+    private void swap(int i, int j) {
+        if (i == j)
+            return;
+        Host hi = hosts.get(i);
+        Host hj = hosts.get(j);
+        hosts.set(i, hj);
+        hosts.set(j, hi);
+        positions.put(hj, i);
+        positions.put(hi, j);
+    }
+}
@@ -0,0 +1,94 @@
+package utils;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Snapshot of the membership in a memory-mapped file, so that a restarted node can reconnect to its previous peers
+ * instead of rebuilding its view from the contact node one shuffle at a time.
+ * The file has a header (magic number and number of hosts) followed by 6 bytes per host (IPv4 address and port).
+ * Saving writes straight to the mapped pages, without a system call per host: the operating system writes them to the
+ * file, which survives the process. The magic number is cleared while saving, so a snapshot interrupted halfway is
+ * ignored when loading. Only IPv4 hosts are saved.
+ */
+public class MembershipSnapshot {
+
+    private static final int MAGIC = 0x4D454D42; // "MEMB"
+    private static final int HEADER_SIZE = 8;
+    private static final int HOST_SIZE = 6;
+    private static final int MIN_FILE_SIZE = 4096;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    public MembershipSnapshot(String file) throws IOException {
+        this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > 0)
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * @return the hosts of the last complete snapshot (empty if there is none)
+     */
+    public List<Host> load() throws IOException {
+        List<Host> hosts = new ArrayList<>();
+        if (buffer == null || buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            return hosts;
+        int n = buffer.getInt(4);
+        if (n < 0 || HEADER_SIZE + (long) n * HOST_SIZE > buffer.capacity())
+            return hosts;
+        byte[] address = new byte[4];
+        for (int i = 0; i < n; i++) {
+            int offset = HEADER_SIZE + i * HOST_SIZE;
+            for (int j = 0; j < 4; j++)
+                address[j] = buffer.get(offset + j);
+            int port = buffer.getShort(offset + 4) & 0xFFFF;
+            hosts.add(new Host(InetAddress.getByAddress(address), port));
+        }
+        return hosts;
+    }
+
+    /**
+     * Replaces the snapshot with the given hosts
+     */
+    public void save(Collection<Host> hosts) throws IOException {
+        ensureCapacity(HEADER_SIZE + (long) hosts.size() * HOST_SIZE);
+        buffer.putInt(0, 0); // invalid until the snapshot is complete
+        int n = 0;
+        for (Host h : hosts) {
+            if (!(h.getAddress() instanceof Inet4Address))
+                continue;
+            int offset = HEADER_SIZE + n * HOST_SIZE;
+            byte[] address = h.getAddress().getAddress();
+            for (int j = 0; j < 4; j++)
+                buffer.put(offset + j, address[j]);
+            buffer.putShort(offset + 4, (short) h.getPort());
+            n++;
+        }
+        buffer.putInt(4, n);
+        buffer.putInt(0, MAGIC);
+    }
+
+    private void ensureCapacity(long size) throws IOException {
+        if (buffer != null && buffer.capacity() >= size)
+            return;
+        long newSize = Math.max(MIN_FILE_SIZE, Math.max(size, buffer == null ? 0 : 2L * buffer.capacity()));
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize); // grows the file
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
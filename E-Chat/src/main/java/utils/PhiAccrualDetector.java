@@ -0,0 +1,119 @@
+package utils;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Phi accrual failure detector (Hayashibara et al., SRDS 2004)
+ * For each monitored peer, keeps a sliding window of the intervals between its heartbeats and estimates their normal
+ * distribution. The suspicion level phi of a peer is -log10 of the probability of a heartbeat arriving even later than
+ * the time already elapsed since the last one: phi = 1 means a 10% chance of a false suspicion, phi = 2 a 1% chance,
+ * and so on. The application picks the phi threshold above which a peer is considered failed, trading detection time
+ * for accuracy, instead of a fixed timeout.
+ * As in Akka, an acceptable pause is added to the mean interval, so that a few late heartbeats (e.g., from a busy
+ * event loop, or from the peer's side during a mass join) do not make phi grow before the pause has passed.
+ */
+public class PhiAccrualDetector {
+
+    private class History {
+        private final double[] intervals; // ring buffer of the last intervals between heartbeats (ms)
+        private int count;
+        private int next;
+        private double sum;
+        private double sumSquares;
+        private long lastHeartbeat; // time of the last heartbeat (ms)
+
+        private History(long now) {
+            this.intervals = new double[windowSize];
+            this.lastHeartbeat = now;
+            // bootstrap with two intervals around the expected one (a standard deviation of a quarter of it), so that a
+            // peer that never sends a heartbeat is also suspected, but not by a single heartbeat arriving late
+            add(expectedInterval * 0.75);
+            add(expectedInterval * 1.25);
+        }
+
+        private void add(double interval) {
+            if (count == intervals.length) {
+                double old = intervals[next];
+                sum -= old;
+                sumSquares -= old * old;
+            } else {
+                count++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % intervals.length;
+            sum += interval;
+            sumSquares += interval * interval;
+        }
+
+        private double phi(long now) {
+            double mean = sum / count;
+            double variance = Math.max(0, sumSquares / count - mean * mean);
+            double stdDev = Math.max(minStdDev, Math.sqrt(variance));
+            return PhiAccrualDetector.phi(now - lastHeartbeat, mean + acceptablePause, stdDev);
+        }
+    }
+
+    private final int windowSize;
+    private final double expectedInterval;
+    private final double minStdDev;
+    private final double acceptablePause;
+    private final Map<Host, History> histories;
+
+    /**
+     * @param windowSize number of intervals kept per peer
+     * @param expectedInterval interval between heartbeats (ms), used before the first heartbeat of a peer arrives
+     * @param minStdDev minimum standard deviation of the intervals (ms), so that very regular heartbeats do not make
+     *                  the detector suspect a peer after a small delay
+     * @param acceptablePause time (ms) added to the mean interval, during which missing heartbeats barely raise phi
+     */
+    public PhiAccrualDetector(int windowSize, double expectedInterval, double minStdDev, double acceptablePause) {
+        this.windowSize = Math.max(2, windowSize);
+        this.expectedInterval = expectedInterval;
+        this.minStdDev = minStdDev;
+        this.acceptablePause = acceptablePause;
+        this.histories = new HashMap<>();
+    }
+
+    /**
+     * Starts monitoring a peer, as if a heartbeat was just received from it
+     */
+    public void monitor(Host peer, long now) {
+        histories.put(peer, new History(now));
+    }
+
+    public void remove(Host peer) {
+        histories.remove(peer);
+    }
+
+    /**
+     * Records a heartbeat from a peer (ignored if the peer is not monitored)
+     */
+    public void heartbeat(Host peer, long now) {
+        History history = histories.get(peer);
+        if (history == null)
+            return;
+        history.add(now - history.lastHeartbeat);
+        history.lastHeartbeat = now;
+    }
+
+    /**
+     * @return the suspicion level of a peer (0 if it is not monitored)
+     */
+    public double phi(Host peer, long now) {
+        History history = histories.get(peer);
+        return history == null ? 0 : history.phi(now);
+    }
+
+    // phi for the normal distribution, with the logistic approximation of its cumulative distribution function
+    private static double phi(double elapsed, double mean, double stdDev) {
+        double y = (elapsed - mean) / stdDev;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean)
+            return -Math.log10(e / (1.0 + e));
+        else
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class BenchmarkData {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    /**
+     * Generates an ASCII string with the given size (in bytes once encoded in UTF-8)
+     * @param size size of the string
+     * @param seed seed of the generator, so that every fork measures the same payload
+     * @return the generated string
+     */
+    public static String randomText(int size, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++)
+            sb.append(ALPHABET.charAt(rnd.nextInt(ALPHABET.length())));
+        return sb.toString();
+    }
+
+    /**
+     * Generates a set of distinct IPv4 hosts, all listening on the default membership port
+     * @param size number of hosts
+     * @param seed seed of the generator, so that every fork measures the same sample
+     * @return the generated set of hosts
+     */
+    public static Set<Host> randomHosts(int size, long seed) throws UnknownHostException {
+        Random rnd = new Random(seed);
+        Set<Host> hosts = new HashSet<>(size, 1);
+        while (hosts.size() < size) {
+            byte[] addr = {10, (byte) rnd.nextInt(256), (byte) rnd.nextInt(256), (byte) (1 + rnd.nextInt(254))};
+            hosts.add(new Host(InetAddress.getByAddress(addr), 8000));
+        }
+        return hosts;
+    }
+}
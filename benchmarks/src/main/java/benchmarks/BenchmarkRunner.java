@@ -0,0 +1,25 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+
+    /**
+     * Runs the JMH benchmarks with the GC profiler always attached, so that every result reports the allocation rate
+     * (gc.alloc.rate) and the bytes allocated per operation (gc.alloc.rate.norm) next to the ns/op score.
+     * Accepts the same command line arguments as the regular JMH launcher (e.g., a benchmark regex or -p payloadSize=16)
+     * @param args JMH command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(cmdOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import messages.GossipMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serializer of the GossipMessage (step E) for different payload sizes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GossipSerializerBenchmark {
+
+    @Param({"16", "256", "4096", "65536"})
+    public int payloadSize;
+
+    private GossipMessage gossip;
+
+    private ByteBuf out; // reused output buffer, like the ones netty hands to the serializers
+    private ByteBuf encodedGossip;
+
+    @Setup
+    public void setup() throws IOException {
+        gossip = new GossipMessage(new UUID(42, 42), 3, BenchmarkData.randomText(payloadSize, 42));
+
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize + 64);
+        encodedGossip = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize + 64);
+        GossipMessage.serializer.serialize(gossip, encodedGossip);
+
+        System.out.println("# Wire size: GossipMessage=" + encodedGossip.readableBytes() + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+        encodedGossip.release();
+    }
+
+    @Benchmark
+    public ByteBuf serializeGossip() throws IOException {
+        out.clear();
+        GossipMessage.serializer.serialize(gossip, out);
+        return out;
+    }
+
+    @Benchmark
+    public GossipMessage deserializeGossip() throws IOException {
+        encodedGossip.readerIndex(0);
+        return GossipMessage.serializer.deserialize(encodedGossip);
+    }
+
+    @Benchmark
+    public String deserializeAndDecodeGossip() throws IOException {
+        encodedGossip.readerIndex(0);
+        return GossipMessage.serializer.deserialize(encodedGossip).getContent();
+    }
+
+    @Benchmark
+    public GossipMessage roundTripGossip() throws IOException {
+        out.clear();
+        GossipMessage.serializer.serialize(gossip, out);
+        return GossipMessage.serializer.deserialize(out);
+    }
+}
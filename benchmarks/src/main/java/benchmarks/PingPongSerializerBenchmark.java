@@ -0,0 +1,121 @@
+package benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import pingpong.messages.PingMessage;
+import pingpong.messages.PongMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serializers of the PingPong messages (step B) for different payload sizes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PingPongSerializerBenchmark {
+
+    @Param({"16", "256", "4096", "65536"})
+    public int payloadSize;
+
+    private ISerializer<PingMessage> pingSerializer;
+    private ISerializer<PongMessage> pongSerializer;
+
+    private PingMessage ping;
+    private PongMessage pong;
+
+    private ByteBuf out; // reused output buffer, like the ones netty hands to the serializers
+    private ByteBuf encodedPing;
+    private ByteBuf encodedPong;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws IOException {
+        // the serializers are declared with a wildcard type in the messages
+        pingSerializer = (ISerializer<PingMessage>) PingMessage.serializer;
+        pongSerializer = (ISerializer<PongMessage>) PongMessage.serializer;
+
+        String payload = BenchmarkData.randomText(payloadSize, 42);
+        ping = new PingMessage(1, payload);
+        pong = new PongMessage(1, payload);
+
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize + 64);
+        encodedPing = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize + 64);
+        pingSerializer.serialize(ping, encodedPing);
+        encodedPong = PooledByteBufAllocator.DEFAULT.directBuffer(payloadSize + 64);
+        pongSerializer.serialize(pong, encodedPong);
+
+        System.out.println("# Wire size: PingMessage=" + encodedPing.readableBytes() + " bytes, PongMessage="
+                + encodedPong.readableBytes() + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+        encodedPing.release();
+        encodedPong.release();
+    }
+
+    @Benchmark
+    public ByteBuf serializePing() throws IOException {
+        out.clear();
+        pingSerializer.serialize(ping, out);
+        return out;
+    }
+
+    @Benchmark
+    public PingMessage deserializePing() throws IOException {
+        encodedPing.readerIndex(0);
+        return pingSerializer.deserialize(encodedPing);
+    }
+
+    @Benchmark
+    public String deserializeAndDecodePing() throws IOException {
+        encodedPing.readerIndex(0);
+        return pingSerializer.deserialize(encodedPing).getMessage();
+    }
+
+    @Benchmark
+    public PingMessage roundTripPing() throws IOException {
+        out.clear();
+        pingSerializer.serialize(ping, out);
+        return pingSerializer.deserialize(out);
+    }
+
+    /**
+     * What the server does for each ping: deserialize it and serialize the pong that echoes it
+     */
+    @Benchmark
+    public ByteBuf echoPing() throws IOException {
+        encodedPing.readerIndex(0);
+        out.clear();
+        pongSerializer.serialize(PongMessage.echo(pingSerializer.deserialize(encodedPing)), out);
+        return out;
+    }
+
+    @Benchmark
+    public ByteBuf serializePong() throws IOException {
+        out.clear();
+        pongSerializer.serialize(pong, out);
+        return out;
+    }
+
+    @Benchmark
+    public PongMessage deserializePong() throws IOException {
+        encodedPong.readerIndex(0);
+        return pongSerializer.deserialize(encodedPong);
+    }
+
+    @Benchmark
+    public PongMessage roundTripPong() throws IOException {
+        out.clear();
+        pongSerializer.serialize(pong, out);
+        return pongSerializer.deserialize(out);
+    }
+}
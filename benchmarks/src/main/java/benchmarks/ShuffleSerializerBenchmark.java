@@ -0,0 +1,107 @@
+package benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import messages.ShuffleMessage;
+import messages.ShuffleReplyMessage;
+import org.openjdk.jmh.annotations.*;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serializers of the membership shuffle messages (step E) for different sample sizes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShuffleSerializerBenchmark {
+
+    @Param({"2", "16", "128", "1024"})
+    public int sampleSize;
+
+    private ShuffleMessage shuffle;
+    private ShuffleReplyMessage shuffleReply;
+
+    private ByteBuf out; // reused output buffer, like the ones netty hands to the serializers
+    private ByteBuf encodedShuffle;
+    private ByteBuf encodedShuffleReply;
+
+    @Setup
+    public void setup() throws IOException {
+        Set<Host> sample = BenchmarkData.randomHosts(sampleSize, 42);
+        shuffle = new ShuffleMessage(sample);
+        shuffleReply = new ShuffleReplyMessage(sample);
+
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(sampleSize * 16 + 64);
+        encodedShuffle = PooledByteBufAllocator.DEFAULT.directBuffer(sampleSize * 16 + 64);
+        ShuffleMessage.serializer.serialize(shuffle, encodedShuffle);
+        encodedShuffleReply = PooledByteBufAllocator.DEFAULT.directBuffer(sampleSize * 16 + 64);
+        ShuffleReplyMessage.serializer.serialize(shuffleReply, encodedShuffleReply);
+
+        System.out.println("# Wire size: ShuffleMessage=" + encodedShuffle.readableBytes()
+                + " bytes, ShuffleReplyMessage=" + encodedShuffleReply.readableBytes() + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+        encodedShuffle.release();
+        encodedShuffleReply.release();
+    }
+
+    @Benchmark
+    public ByteBuf serializeShuffle() throws IOException {
+        out.clear();
+        ShuffleMessage.serializer.serialize(shuffle, out);
+        return out;
+    }
+
+    @Benchmark
+    public ShuffleMessage deserializeShuffle() throws IOException {
+        encodedShuffle.readerIndex(0);
+        return ShuffleMessage.serializer.deserialize(encodedShuffle);
+    }
+
+    @Benchmark
+    public int deserializeAndResolveShuffle() throws IOException {
+        // the hosts of a decoded sample are only created when it is iterated
+        encodedShuffle.readerIndex(0);
+        int ports = 0;
+        for (Host h : ShuffleMessage.serializer.deserialize(encodedShuffle).getSample())
+            ports += h.getPort();
+        return ports;
+    }
+
+    @Benchmark
+    public ShuffleMessage roundTripShuffle() throws IOException {
+        out.clear();
+        ShuffleMessage.serializer.serialize(shuffle, out);
+        return ShuffleMessage.serializer.deserialize(out);
+    }
+
+    @Benchmark
+    public ByteBuf serializeShuffleReply() throws IOException {
+        out.clear();
+        ShuffleReplyMessage.serializer.serialize(shuffleReply, out);
+        return out;
+    }
+
+    @Benchmark
+    public ShuffleReplyMessage deserializeShuffleReply() throws IOException {
+        encodedShuffleReply.readerIndex(0);
+        return ShuffleReplyMessage.serializer.deserialize(encodedShuffleReply);
+    }
+
+    @Benchmark
+    public ShuffleReplyMessage roundTripShuffleReply() throws IOException {
+        out.clear();
+        ShuffleReplyMessage.serializer.serialize(shuffleReply, out);
+        return ShuffleReplyMessage.serializer.deserialize(out);
+    }
+}